@@ -0,0 +1,137 @@
+/**
+ * The one place AppletLauncher touches java.applet, which the JDK has 
+ * deprecated for removal.  It makes the applet, is its stub and its 
+ * context, and passes the launcher's lifecycle calls on to it.  The 
+ * launcher only sees a Container.
+ *
+ * When java.applet is gone from the JDK, this class is what has to be
+ * replaced: the applets would become Panels with the same init, start,
+ * stop and destroy, and a host would call those instead.
+ */
+
+package com.till.pickupplot;
+
+import java.applet.*;
+import java.awt.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+@SuppressWarnings("removal")
+class AppletHost implements AppletStub, AppletContext {
+    AppletLauncher launcher;
+    Applet applet;
+    Hashtable<String, InputStream> streams = new Hashtable<String, InputStream>();
+
+    /**
+     * Make an applet of class c, for launcher.
+     */
+    AppletHost(AppletLauncher launcher, Class<?> c) throws Exception {
+	this.launcher = launcher;
+	applet = (Applet) c.getDeclaredConstructor().newInstance();
+	applet.setStub(this);
+    }
+
+    Container component() {
+	return applet;
+    }
+
+    void init() {
+	applet.init();
+    }
+
+    void start() {
+	applet.start();
+    }
+
+    void stop() {
+	applet.stop();
+    }
+
+    void destroy() {
+	applet.destroy();
+    }
+
+    // AppletStub
+
+    public boolean isActive() {
+	return launcher.active;
+    }
+
+    public URL getDocumentBase() {
+	try {
+	    return new File(System.getProperty("user.dir")).toURI().toURL();
+	} catch (MalformedURLException e) {
+	    return null;
+	}
+    }
+
+    public URL getCodeBase() {
+	try {
+	    URL url = applet.getClass().getProtectionDomain().getCodeSource().getLocation();
+	    return (null == url) ? getDocumentBase() : url;
+	} catch (SecurityException e) {
+	    return getDocumentBase();
+	} catch (NullPointerException e) {
+	    return getDocumentBase();
+	}
+    }
+
+    public String getParameter(String name) {
+	return launcher.params.get(name.toLowerCase());
+    }
+
+    public AppletContext getAppletContext() {
+	return this;
+    }
+
+    public void appletResize(int width, int height) {
+	launcher.resize(width, height);
+    }
+
+    // AppletContext
+
+    public AudioClip getAudioClip(URL url) {
+	return Applet.newAudioClip(url);
+    }
+
+    public Image getImage(URL url) {
+	return Toolkit.getDefaultToolkit().getImage(url);
+    }
+
+    public Applet getApplet(String name) {
+	return name.equals(getParameter("name")) ? applet : null;
+    }
+
+    public Enumeration<Applet> getApplets() {
+	Vector<Applet> v = new Vector<Applet>();
+	v.addElement(applet);
+	return v.elements();
+    }
+
+    public void showDocument(URL url) {
+    }
+
+    public void showDocument(URL url, String target) {
+    }
+
+    public void showStatus(String status) {
+	launcher.showStatus(status);
+    }
+
+    public void setStream(String key, InputStream stream) throws IOException {
+	if (null == stream) {
+	    streams.remove(key);
+	} else {
+	    streams.put(key, stream);
+	}
+    }
+
+    public InputStream getStream(String key) {
+	return streams.get(key);
+    }
+
+    public Iterator<String> getStreamKeys() {
+	return streams.keySet().iterator();
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * Runs an applet on the desktop, in a Frame, without a browser or
+ * appletviewer:
+ *
+ *   java -cp classes com.till.pickupplot.AppletLauncher PickupPlot
+ *   java -cp classes com.till.pickupplot.AppletLauncher -time Calculator
+ *
+ * The class is PickupPlot, Calculator, LifeCycle or any other applet's
+ * full class name.  Options:
+ *   -width n            applet width (default from the class, or 640)
+ *   -height n           applet height (default from the class, or 480)
+ *   -param name=value   an applet parameter, repeatable
+ *   -time               report the time to the first frame on stderr
+ *   -train              quit soon after the first frame, for a class data
+ *                       sharing training run (see appcds.sh)
+ *
+ * The applet gets the browser's lifecycle: init and start when the frame
+ * opens, stop when it's iconified and start again when it's restored,
+ * and stop and destroy when it's closed.
+ *
+ * Startup is kept short: the applet is loaded on the event thread as soon
+ * as main has read the options, PickupPlot's displays don't make their
+ * offscreen images or set up fonts until they're first painted, and
+ * appcds.sh builds a class data sharing archive so the JDK and applet
+ * classes are mapped in rather than loaded and verified.  The time to
+ * the first frame is when the first paint event on the frame or the
+ * applet has been handled.
+ *
+ * Everything that needs java.applet, which is deprecated for removal, is
+ * in AppletHost.
+ */
+
+package com.till.pickupplot;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+
+public class AppletLauncher extends WindowAdapter implements AWTEventListener {
+    static String SIZE_NAMES[] = {"PickupPlot", "Calculator", "LifeCycle"};
+    static int SIZES[][] = {{800, 600}, {300, 100}, {300, 100}};
+    static int TRAIN_LINGER = 1000;	// ms after the first frame
+
+    long mainTime;		// System.nanoTime() at main
+    long initTime;
+    long visibleTime;
+    long firstFrameTime;
+    String className;
+    int width = -1;
+    int height = -1;
+    Hashtable<String, String> params = new Hashtable<String, String>();
+    boolean time = false;
+    boolean train = false;
+    AppletHost host;
+    Container applet;
+    Frame frame;
+    String title;
+    boolean active = false;
+
+    public static void main(String args[]) {
+	final AppletLauncher launcher = new AppletLauncher();
+	launcher.mainTime = System.nanoTime();
+	try {
+	    launcher.parseArgs(args);
+	} catch (IllegalArgumentException e) {
+	    System.err.println("AppletLauncher: " + e.getMessage());
+	    System.exit(1);
+	}
+	EventQueue.invokeLater(new Runnable() {
+	    public void run() {
+		try {
+		    launcher.launch();
+		} catch (InvocationTargetException e) {
+		    System.err.println("AppletLauncher: can't run " + launcher.className + ": " + e.getCause());
+		    System.exit(1);
+		} catch (Exception e) {
+		    System.err.println("AppletLauncher: can't run " + launcher.className + ": " + e);
+		    System.exit(1);
+		}
+	    }
+	});
+    }
+
+    void parseArgs(String args[]) {
+	for (int i = 0; i < args.length; i++) {
+	    String opt = args[i];
+	    if (opt.equals("-time")) {
+		time = true;
+		continue;
+	    } else if (opt.equals("-train")) {
+		train = true;
+		continue;
+	    } else if (!opt.startsWith("-")) {
+		if ((null != className) || (i + 1 != args.length)) {
+		    throw new IllegalArgumentException("the class comes last, once");
+		}
+		className = opt;
+		continue;
+	    }
+	    if (i + 1 == args.length) {
+		throw new IllegalArgumentException("missing value for " + opt);
+	    }
+	    String val = args[++i];
+	    if (opt.equals("-width")) {
+		width = Integer.parseInt(val);
+	    } else if (opt.equals("-height")) {
+		height = Integer.parseInt(val);
+	    } else if (opt.equals("-param")) {
+		int eq = val.indexOf('=');
+		if (eq <= 0) {
+		    throw new IllegalArgumentException("bad parameter " + val);
+		}
+		// applet parameter names aren't case sensitive
+		params.put(val.substring(0, eq).toLowerCase(), val.substring(eq + 1));
+	    } else {
+		throw new IllegalArgumentException("unknown option " + opt);
+	    }
+	}
+	if (null == className) {
+	    throw new IllegalArgumentException("no applet class");
+	}
+	String simpleName = className.substring(className.lastIndexOf('.') + 1);
+	for (int i = 0; i < SIZE_NAMES.length; i++) {
+	    if (SIZE_NAMES[i].equals(simpleName)) {
+		width = (width < 0) ? SIZES[i][0] : width;
+		height = (height < 0) ? SIZES[i][1] : height;
+	    }
+	}
+	width = (width < 0) ? 640 : width;
+	height = (height < 0) ? 480 : height;
+	if ((width <= 0) || (height <= 0)) {
+	    throw new IllegalArgumentException("bad width or height");
+	}
+    }
+
+    /**
+     * Make the applet and its frame, and bring it up.  On the event
+     * thread.
+     */
+    void launch() throws Exception {
+	host = new AppletHost(this, loadClass(className));
+	applet = host.component();
+	Toolkit.getDefaultToolkit().addAWTEventListener(this, AWTEvent.PAINT_EVENT_MASK);
+
+	title = className.substring(className.lastIndexOf('.') + 1);
+	frame = new Frame(title);
+	frame.setFont(new Font("Dialog", Font.PLAIN, 12));
+	frame.setBackground(Color.white);
+	frame.addWindowListener(this);
+	// the applet needs its parent, for its font, before init
+	frame.add("Center", applet);
+	applet.setPreferredSize(new Dimension(width, height));
+	applet.setSize(width, height);
+
+	host.init();
+	initTime = System.nanoTime();
+	frame.pack();
+	frame.setVisible(true);
+	visibleTime = System.nanoTime();
+	start();
+    }
+
+    /**
+     * The class by name, looking in this package for the short names of
+     * its applets.
+     */
+    static Class<?> loadClass(String name) throws ClassNotFoundException {
+	try {
+	    return Class.forName(name);
+	} catch (ClassNotFoundException e) {
+	    if (-1 != name.indexOf('.')) {
+		throw e;
+	    }
+	    return Class.forName(AppletLauncher.class.getPackage().getName() + "." + name);
+	}
+    }
+
+    void start() {
+	if (!active) {
+	    active = true;
+	    host.start();
+	}
+    }
+
+    void stop() {
+	if (active) {
+	    active = false;
+	    host.stop();
+	}
+    }
+
+    // the frame's lifecycle
+
+    public void windowIconified(WindowEvent e) {
+	stop();
+    }
+
+    public void windowDeiconified(WindowEvent e) {
+	start();
+    }
+
+    public void windowClosing(WindowEvent e) {
+	close();
+    }
+
+    void close() {
+	stop();
+	host.destroy();
+	frame.dispose();
+	System.exit(0);
+    }
+
+    /**
+     * Catch the first paint, and note the time once it's been handled.
+     */
+    public void eventDispatched(AWTEvent e) {
+	if ((0L != firstFrameTime) || (null == frame)) {
+	    return;
+	}
+	Object source = e.getSource();
+	if ((source != frame) && (source != applet) &&
+	    !((source instanceof Component) && applet.isAncestorOf((Component) source))) {
+	    return;
+	}
+	firstFrameTime = -1L;
+	EventQueue.invokeLater(new Runnable() {
+	    public void run() {
+		firstFrame();
+	    }
+	});
+    }
+
+    void firstFrame() {
+	firstFrameTime = System.nanoTime();
+	Toolkit.getDefaultToolkit().removeAWTEventListener(this);
+	if (time) {
+	    System.err.println(timeReport());
+	}
+	if (train) {
+	    Thread t = new Thread() {
+		public void run() {
+		    try {
+			Thread.sleep(TRAIN_LINGER);
+		    } catch (InterruptedException e) {
+		    }
+		    EventQueue.invokeLater(new Runnable() {
+			public void run() {
+			    close();
+			}
+		    });
+		}
+	    };
+	    t.setDaemon(true);
+	    t.start();
+	}
+    }
+
+    String timeReport() {
+	// the JVM's start time is only good to the millisecond
+	long sinceJvm = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+	long sinceMain = (System.nanoTime() - mainTime) / 1000000L;
+	return title + ": init " + millis(initTime) + " ms, visible " + millis(visibleTime) +
+	    " ms, first frame " + millis(firstFrameTime) + " ms after main; first frame " +
+	    (sinceJvm - sinceMain + millis(firstFrameTime)) + " ms after the JVM started";
+    }
+
+    long millis(long nanoTime) {
+	return (nanoTime - mainTime) / 1000000L;
+    }
+
+    // for AppletHost
+
+    void resize(int width, int height) {
+	applet.setPreferredSize(new Dimension(width, height));
+	frame.pack();
+    }
+
+    void showStatus(String status) {
+	if (null != frame) {
+	    frame.setTitle(((null == status) || (0 == status.length())) ? title : title + " - " + status);
+	}
+    }
+}
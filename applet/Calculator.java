@@ -1,11 +1,13 @@
 import java.awt.*; //awt Ű Ŭ .  ϱ α׷ ۼҶ 
 import java.applet.*;//applet Ŭ .  ϱ  α׷ ۼ  
+import com.till.calculator.CalculatorCore;//ư Է° 
+import com.till.trace.LifecycleTrace;//ܰ躰 ð, Ҵ緮 
 
 //  ϴ calculator Ŭ 
 public class Calculator extends Applet{
  Label label;
- float f = 0;
- char c = ' ';
+ CalculatorCore core = new CalculatorCore();
+ LifecycleTrace trace = new LifecycleTrace("Calculator");
 
  Panel button;
  Panel nPanel;
@@ -16,65 +18,19 @@ public class Calculator extends Applet{
  //ư ̺Ʈ ߻  
  public boolean action(Event e, Object obj){
   if ( e.target instanceof Button) {
-   char c_event = ((Button) e.target).getLabel().charAt(0);
-   //Ģ
-   switch (c_event){
-    case '+':
-    case '*':
-    case '-':
-    case '/':
-
-     f = Float.valueOf(label.getText()).floatValue();
-     c = c_event;
-     label.setText("");
-     break;
-
-     //'=' Ŭ   
-     case '=':
-      float fNumber = 0;
-     float result = 0;
-     fNumber = Float.valueOf (label.getText()).floatValue();
-
-     if ( c!=' '){
-      switch (c){
-      
-       // 
-       case '+':
-        result = f + fNumber;
-       break;
-
-       //
-       case '*':
-        result = f * fNumber;
-        break;
-
-        //
-        case '-':
-         result = f - fNumber;
-        break;
-
-        //
-        case '/':
-         result = f / fNumber;
-        break;
-      }
-      f = result;
-      label.setText(String.valueOf(result));
-     }
-     break;
-     default:
-
-      //'0' ʱȭ
-      if(label.getText() =="0")
-       label.setText("");
-       label.setText(label.getText() + c_event);
-   }
+   //, , '='  core ó
+   core.key(((Button) e.target).getLabel().charAt(0));
+
+   //ǥð ٲ  ̺ 
+   if (core.changed())
+    label.setText(core.text());
    return true;
   }
   return false;
  }
  //ø ʱȭ
  public void init() {
+  trace.begin(LifecycleTrace.INIT);
   //borderlayout 
   setLayout(new BorderLayout());
 
@@ -116,5 +72,29 @@ public class Calculator extends Applet{
    fPanel.add(fButton[i]);
   button.add("East", fPanel);
   add("Center", button);
+  trace.end(LifecycleTrace.INIT);
+ }
+
+ //, ,   Ѵ
+ public void start() {
+  trace.begin(LifecycleTrace.START);
+  trace.end(LifecycleTrace.START);
+ }
+
+ public void stop() {
+  trace.begin(LifecycleTrace.STOP);
+  trace.end(LifecycleTrace.STOP);
+ }
+
+ public void destroy() {
+  trace.begin(LifecycleTrace.DESTROY);
+  trace.end(LifecycleTrace.DESTROY);
+ }
+
+ //ó ׸  ɸ ð
+ public void paint(Graphics g) {
+  trace.begin(LifecycleTrace.FIRST_FRAME);
+  super.paint(g);
+  trace.end(LifecycleTrace.FIRST_FRAME);
  }
 }
@@ -0,0 +1,345 @@
+/**
+ * The calculator's keystrokes, without AWT.
+ *
+ *   CalculatorCore core = new CalculatorCore();
+ *   core.key('1'); core.key('+'); core.key('2'); core.key('*'); core.key('3');
+ *   core.key('=');		// shows 7.0, core.result() is 7
+ *
+ * Keys are the buttons' first characters: digits, '.', + - * / and '='.
+ * The text to show is kept in a char array that's reused, and the number
+ * being typed is kept as it's typed, as a mantissa and a count of digits
+ * after the point, so it's never parsed back out of the text.  Beside the
+ * text the core keeps the expression's shape, with each number as a
+ * variable, v00+v01*v02, and the numbers' values.  '=' has Expression
+ * compile the shape, found in its cache after the first time, and
+ * evaluate it on the values, so precedence is Expression's own.  A key
+ * allocates nothing once its shape has been seen, and changed says
+ * whether the text moved, so the label only needs setting when it did.
+ *
+ * After '=' an operator goes on from the result and a digit starts over.
+ * An operator right after another replaces it, and '=' right after one
+ * shows Error.
+ */
+
+package com.till.calculator;
+
+public class CalculatorCore {
+ static int MAX_TEXT = 64;
+ static int MAX_NUMBERS = MAX_TEXT / 2 + 1; // ڰ ϳ 
+ static int DIGITS = 15; //  ȿ 
+ static double POWERS[] = new double[23];
+ static char ZERO[] = {'0'};
+ static char ERROR[] = {'E', 'r', 'r', 'o', 'r'};
+ static char NAN[] = {'N', 'a', 'N'};
+ static char INFINITY[] = {'I', 'n', 'f', 'i', 'n', 'i', 't', 'y'};
+
+ static {
+  //10^22  double Ȯϴ
+  POWERS[0] = 1;
+  for (int i = 1; i < POWERS.length; i++)
+   POWERS[i] = POWERS[i - 1] * 10;
+ }
+
+ char text[] = new char[MAX_TEXT];
+ int length;
+ boolean changed;
+
+ //Է  : mantissa / 10^decimals
+ double mantissa;
+ int decimals;
+ boolean point; //'.' 
+ boolean typing; // ڿ  ִ
+
+ boolean done; // ǥõǾ ִ
+ boolean error;
+ double result;
+
+ //   :  ϳ  ϳ
+ char shape[] = new char[MAX_NUMBERS * 4];
+ int shapeLength;
+ double values[] = new double[MAX_NUMBERS];
+ int count;
+
+ // ڷ ٲ   ڸ
+ char digits[] = new char[DIGITS];
+
+ public CalculatorCore() {
+  clear();
+  changed = false;
+ }
+
+ /**
+  * Back to 0, as at the start.
+  */
+ public void clear() {
+  set(ZERO);
+  mantissa = 0;
+  decimals = 0;
+  point = false;
+  typing = true;
+  done = true;
+  error = false;
+  result = 0;
+  shapeLength = 0;
+  count = 0;
+ }
+
+ /**
+  * Press a button.  Other keys are ignored.
+  */
+ public void key(char c) {
+  changed = false;
+  switch (c) {
+   case '+':
+   case '-':
+   case '*':
+   case '/':
+    operator(c);
+    break;
+   case '=':
+    equals();
+    break;
+   case '.':
+    point();
+    break;
+   default:
+    if (('0' <= c) && (c <= '9'))
+     digit(c);
+  }
+ }
+
+ public boolean changed() {
+  return changed;
+ }
+
+ public String text() {
+  return new String(text, 0, length);
+ }
+
+ public boolean isError() {
+  return error;
+ }
+
+ /**
+  * Whether a result is showing, so '=' would do nothing.
+  */
+ public boolean isDone() {
+  return done;
+ }
+
+ /**
+  * The last result from '=', or 0.
+  */
+ public double result() {
+  return result;
+ }
+
+ //  ڿ   
+ void restart() {
+  clear();
+  length = 0;
+  typing = false;
+  done = false;
+ }
+
+ void digit(char c) {
+  if (done || error)
+   restart();
+  if (!typing) {
+   mantissa = 0;
+   decimals = 0;
+   point = false;
+  } else if (!point && (0 == mantissa)) {
+   // 0 ٲ۴
+   length--;
+  }
+  if (MAX_TEXT == length)
+   return;
+  typing = true;
+  mantissa = mantissa * 10 + (c - '0');
+  if (point)
+   decimals++;
+  append(c);
+ }
+
+ void point() {
+  if (done || error)
+   restart();
+  if (typing && point)
+   return;
+  if (MAX_TEXT - 2 < length)
+   return;
+  if (!typing) {
+   mantissa = 0;
+   decimals = 0;
+   typing = true;
+   append('0');
+  }
+  point = true;
+  append('.');
+ }
+
+ void operator(char c) {
+  if (error)
+   clear();
+  // 
+  if (done) {
+   done = false;
+   mantissa = result;
+   decimals = 0;
+   point = false;
+  }
+  if (!typing) {
+   //ڸ ٲ۴
+   shape[shapeLength - 1] = c;
+   text[length - 1] = c;
+   changed = true;
+   return;
+  }
+  if (MAX_TEXT == length)
+   return;
+  push(number());
+  shape[shapeLength++] = c;
+  typing = false;
+  append(c);
+ }
+
+ void equals() {
+  if (done || error)
+   return;
+  if (!typing) {
+   set(ERROR);
+   error = true;
+   shapeLength = 0;
+   count = 0;
+   return;
+  }
+  push(number());
+  result = Expression.compile(shape, shapeLength).eval(values);
+  shapeLength = 0;
+  count = 0;
+  done = true;
+  show(result);
+ }
+
+ //Է   
+ double number() {
+  if (0 == decimals)
+   return mantissa;
+  if (decimals < POWERS.length)
+   return mantissa / POWERS[decimals];
+  return mantissa / Math.pow(10, decimals);
+ }
+
+ //  v00, v01, ...  翡 ִ´
+ void push(double v) {
+  shape[shapeLength++] = 'v';
+  shape[shapeLength++] = (char) ('0' + count / 10);
+  shape[shapeLength++] = (char) ('0' + count % 10);
+  values[count++] = v;
+ }
+
+ void set(char s[]) {
+  System.arraycopy(s, 0, text, 0, s.length);
+  length = s.length;
+  changed = true;
+ }
+
+ void append(char c) {
+  text[length++] = c;
+  changed = true;
+ }
+
+ /**
+  * v into the text, as String.valueOf would show it but to DIGITS
+  * significant digits: plain from 10^-3 up to 10^7, and with an E
+  * outside that.
+  */
+ void show(double v) {
+  length = 0;
+  changed = true;
+  if (v != v) {
+   set(NAN);
+   return;
+  }
+  if ((v < 0) || ((0 == v) && (1 / v < 0))) {
+   append('-');
+   v = -v;
+  }
+  if (Double.isInfinite(v)) {
+   System.arraycopy(INFINITY, 0, text, length, INFINITY.length);
+   length += INFINITY.length;
+   return;
+  }
+  if (0 == v) {
+   append('0');
+   append('.');
+   append('0');
+   return;
+  }
+  //ȿ  DIGITS  
+  int e = (int) Math.floor(Math.log10(v));
+  long n = Math.round(scale(v, DIGITS - 1 - e));
+  if (n < (long) POWERS[DIGITS - 1]) {
+   e--;
+   n = Math.round(scale(v, DIGITS - 1 - e));
+  } else if ((long) POWERS[DIGITS] <= n) {
+   e++;
+   n = Math.round(scale(v, DIGITS - 1 - e));
+  }
+  // 0 
+  int nd = DIGITS;
+  for (int i = DIGITS - 1; 0 <= i; i--) {
+   digits[i] = (char) ('0' + n % 10);
+   n /= 10;
+  }
+  while ((1 < nd) && ('0' == digits[nd - 1]))
+   nd--;
+
+  if ((-3 <= e) && (e < 7)) {
+   if (e < 0) {
+    append('0');
+    append('.');
+    for (int i = -1; e < i; i--)
+     append('0');
+    for (int i = 0; i < nd; i++)
+     append(digits[i]);
+   } else {
+    for (int i = 0; i <= e; i++)
+     append((i < nd) ? digits[i] : '0');
+    append('.');
+    if (nd <= e + 1)
+     append('0');
+    for (int i = e + 1; i < nd; i++)
+     append(digits[i]);
+   }
+   return;
+  }
+  append(digits[0]);
+  append('.');
+  if (1 == nd)
+   append('0');
+  for (int i = 1; i < nd; i++)
+   append(digits[i]);
+  append('E');
+  if (e < 0) {
+   append('-');
+   e = -e;
+  }
+  int p = 1;
+  while (p * 10 <= e)
+   p *= 10;
+  for (; 0 < p; p /= 10)
+   append((char) ('0' + e / p % 10));
+ }
+
+ //v * 10^k
+ static double scale(double v, int k) {
+  if ((0 <= k) && (k < POWERS.length))
+   return v * POWERS[k];
+  if ((k < 0) && (-k < POWERS.length))
+   return v / POWERS[-k];
+  //10^k  ġ ʰ ѷ 
+  return v * Math.pow(10, k / 2) * Math.pow(10, k - k / 2);
+ }
+}
@@ -0,0 +1,162 @@
+import java.io.*;
+import java.lang.management.*;
+
+import com.till.calculator.CalculatorCore;
+import com.till.calculator.Expression;
+
+/**
+ * Replays scripted keystrokes through CalculatorCore, to show how many it
+ * handles a second and that it allocates nothing while doing it.
+ *
+ *   java CalculatorReplay -count 50000000 -check
+ *
+ * Options:
+ *   -keys text          the script, as button characters (default SCRIPT)
+ *   -file name          read the script from a file; whitespace is skipped
+ *   -count n            keystrokes per round, going round and round the
+ *                       script (default 10000000)
+ *   -check              go through the script once first, checking the
+ *                       result of each '=' against Expression
+ *
+ * After a warm-up round, ROUNDS rounds are timed, and each one's keys per
+ * second and bytes allocated per key go to stderr.  The label's updates
+ * are counted but not made, as if the applet had no screen.
+ */
+public class CalculatorReplay {
+ static String SCRIPT = "12.5+7*3=*2=3.14159*2-1/3=100000-42/7+0.001=9876.54*2+3*4-5=" +
+  "1/0=5-=0.1+0.2=.5*.5=7*+3=1/3*3=123456789*1000=0.00012/7=";
+ static int ROUNDS = 5;
+
+ char keys[];
+ long count = 10000000L;
+ boolean check = false;
+ long updates; //̺  Ƚ
+
+ public static void main(String args[]) throws IOException {
+  CalculatorReplay replay = new CalculatorReplay();
+  try {
+   replay.parseArgs(args);
+  } catch (IllegalArgumentException e) {
+   System.err.println("CalculatorReplay: " + e.getMessage());
+   System.exit(1);
+  }
+  if (replay.check && (0 < replay.check())) {
+   System.exit(1);
+  }
+  replay.run(new CalculatorCore());
+  for (int i = 0; i < ROUNDS; i++)
+   System.err.println(replay.round());
+ }
+
+ void parseArgs(String args[]) throws IOException {
+  keys = SCRIPT.toCharArray();
+  for (int i = 0; i < args.length; i++) {
+   String opt = args[i];
+   if (opt.equals("-check")) {
+    check = true;
+    continue;
+   }
+   if (i + 1 == args.length)
+    throw new IllegalArgumentException("missing value for " + opt);
+   String val = args[++i];
+   if (opt.equals("-keys"))
+    keys = val.toCharArray();
+   else if (opt.equals("-file"))
+    keys = readScript(val);
+   else if (opt.equals("-count"))
+    count = Long.parseLong(val);
+   else
+    throw new IllegalArgumentException("unknown option " + opt);
+  }
+  if ((0 == keys.length) || (count <= 0))
+   throw new IllegalArgumentException("empty script or bad count");
+ }
+
+ static char[] readScript(String name) throws IOException {
+  Reader in = new BufferedReader(new FileReader(name));
+  StringBuffer sb = new StringBuffer();
+  int c;
+  while (-1 != (c = in.read()))
+   if (!Character.isWhitespace((char) c))
+    sb.append((char) c);
+  in.close();
+  return sb.toString().toCharArray();
+ }
+
+ /**
+  * Go through the script once, and report each '=' whose result isn't
+  * what Expression makes of the text it was pressed on.  The number of
+  * mismatches.
+  */
+ int check() {
+  CalculatorCore core = new CalculatorCore();
+  int bad = 0;
+  int checked = 0;
+  for (int i = 0; i < keys.length; i++) {
+   //   '=' ƹ ϵ 
+   String text = ('=' == keys[i]) && !core.isDone() && !core.isError() ? core.text() : null;
+   core.key(keys[i]);
+   //Infinity, NaN  ̾  Expression  Ѵ
+   if ((null == text) || (-1 != text.indexOf('I')) || (-1 != text.indexOf('N')))
+    continue;
+   checked++;
+   String want;
+   try {
+    double v = Expression.evaluate(text);
+    want = (core.isError() || !close(core.result(), v)) ? "" + v : null;
+   } catch (IllegalArgumentException e) {
+    want = core.isError() ? null : "Error";
+   }
+   if (null != want) {
+    bad++;
+    System.err.println("CalculatorReplay: " + text + "= gives " + core.text() + ", not " + want);
+   }
+  }
+  System.err.println("checked " + checked + " results, " + bad + " wrong");
+  return bad;
+ }
+
+ static boolean close(double a, double b) {
+  if ((a != a) || (b != b))
+   return (a != a) && (b != b);
+  // ̾  ǥõ 15ڸ ٽ 
+  return (a == b) || (Math.abs(a - b) <= 1e-12 * Math.max(Math.abs(a), Math.abs(b)));
+ }
+
+ //count  Ű 
+ double run(CalculatorCore core) {
+  double sum = 0;
+  int k = 0;
+  for (long i = 0; i < count; i++) {
+   core.key(keys[k]);
+   if (core.changed())
+    updates++;
+   if (++k == keys.length) {
+    k = 0;
+    sum += core.result();
+   }
+  }
+  return sum;
+ }
+
+ String round() {
+  ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  com.sun.management.ThreadMXBean allocs = null;
+  if (threads instanceof com.sun.management.ThreadMXBean)
+   allocs = (com.sun.management.ThreadMXBean) threads;
+  long tid = Thread.currentThread().getId();
+  CalculatorCore core = new CalculatorCore();
+  updates = 0;
+
+  long bytes0 = (null == allocs) ? 0 : allocs.getThreadAllocatedBytes(tid);
+  long t0 = System.nanoTime();
+  double sum = run(core);
+  long nanos = System.nanoTime() - t0;
+  long bytes = (null == allocs) ? -1 : allocs.getThreadAllocatedBytes(tid) - bytes0;
+
+  return count + " keys in " + (nanos / 1000000L) + " ms: " +
+   Math.round(count * 1.0e9 / nanos / 1000.0) / 1000.0 + "M keys/s, " +
+   ((bytes < 0) ? "?" : "" + (double) bytes / count) + " B/key, " +
+   updates + " label updates (sum " + sum + ")";
+ }
+}
@@ -0,0 +1,52 @@
+/**
+ * A complex response at a number of frequencies, from 
+ * GuitarModel.complexResponse: the response, its slope with respect to
+ * radian relative frequency, and from those the phase (radians, -pi to
+ * pi) and group delay (seconds).  The group delay is NaN where the
+ * response is 0.
+ */
+
+package com.till.pickupplot;
+
+class ComplexResponse {
+    int count;
+    double re[] = new double[0];
+    double im[] = new double[0];
+    double slopeRe[] = new double[0];
+    double slopeIm[] = new double[0];
+    double phase[] = new double[0];
+    double groupDelay[] = new double[0];
+
+    void setSize(int count) {
+	this.count = count;
+	if (re.length < count) {
+	    re = new double[count];
+	    im = new double[count];
+	    slopeRe = new double[count];
+	    slopeIm = new double[count];
+	    phase = new double[count];
+	    groupDelay = new double[count];
+	}
+    }
+
+    double magnitude(int j) {
+	return Math.sqrt(re[j] * re[j] + im[j] * im[j]);
+    }
+
+    /**
+     * Work out the phase and group delay.  The group delay is 
+     * -d(phase)/d(omega) = -Im(slope * conj(response)) / |response|^2 
+     * times d(radian relative frequency)/d(omega), which is radPerOmega.
+     */
+    void finish(int count, double radPerOmega) {
+	for (int j = 0; j < count; j++) {
+	    double a = re[j];
+	    double b = im[j];
+	    // a real response, as the string alone gives, is 0 or 180 degrees
+	    phase[j] = (0.0 == b) ? ((a < 0.0) ? Math.PI : 0.0) : Math.atan2(b, a);
+	    double m2 = a * a + b * b;
+	    groupDelay[j] = (0.0 < m2) 
+		? -radPerOmega * (slopeIm[j] * a - slopeRe[j] * b) / m2 : Double.NaN;
+	}
+    }
+}
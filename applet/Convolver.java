@@ -0,0 +1,85 @@
+/**
+ * FFT overlap-add convolution with a fixed FIR filter, one stream.
+ * Each step takes stepSize() samples in and gives the same number out.
+ * Two blocks go through each transform, one in the real part and one
+ * in the imaginary part; with a real filter they don't mix.
+ */
+
+package com.till.pickupplot;
+
+class Convolver {
+    FFT fft;
+    int n;			// transform size
+    int blockSize;		// n - taps + 1
+    double hRe[];		// the filter's transform, shared
+    double hIm[];
+    double re[];
+    double im[];
+    double acc[];		// output not yet given out
+
+    Convolver(double h[]) {
+	int taps = h.length;
+	// blocks about three times the filter's length: longer blocks 
+	// spread each transform over more samples, until the transforms
+	// fall out of the cache
+	n = PickupFilter.powerOfTwoAtLeast(4 * taps);
+	blockSize = n - taps + 1;
+	fft = new FFT(n);
+	hRe = new double[n];
+	hIm = new double[n];
+	System.arraycopy(h, 0, hRe, 0, taps);
+	fft.transform(hRe, hIm, false);
+	newBuffers();
+    }
+
+    /**
+     * Another stream through the same filter.
+     */
+    Convolver(Convolver c) {
+	fft = c.fft;
+	n = c.n;
+	blockSize = c.blockSize;
+	hRe = c.hRe;
+	hIm = c.hIm;
+	newBuffers();
+    }
+
+    void newBuffers() {
+	re = new double[n];
+	im = new double[n];
+	acc = new double[2 * blockSize + n];
+    }
+
+    int stepSize() {
+	return 2 * blockSize;
+    }
+
+    void process(double in[], double out[]) {
+	int b = blockSize;
+	for (int j = 0; j < b; j++) {
+	    re[j] = in[j];
+	    im[j] = in[b + j];
+	}
+	for (int j = b; j < n; j++) {
+	    re[j] = 0.0;
+	    im[j] = 0.0;
+	}
+	fft.transform(re, im, false);
+	for (int k = 0; k < n; k++) {
+	    double xr = re[k];
+	    double xi = im[k];
+	    re[k] = xr * hRe[k] - xi * hIm[k];
+	    im[k] = xr * hIm[k] + xi * hRe[k];
+	}
+	fft.transform(re, im, true);
+	for (int j = 0; j < n; j++) {
+	    acc[j] += re[j];
+	    acc[b + j] += im[j];
+	}
+	System.arraycopy(acc, 0, out, 0, 2 * b);
+	System.arraycopy(acc, 2 * b, acc, 0, n);
+	for (int j = n; j < acc.length; j++) {
+	    acc[j] = 0.0;
+	}
+    }
+}
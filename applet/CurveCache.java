@@ -0,0 +1,336 @@
+/**
+ * An LRU cache of complete response curves, shared by everything in the
+ * JVM that plots or serves them: the applet's render thread and the
+ * headless callers alike.
+ *
+ * The key is the model state that the curve depends on, quantized and
+ * put in a canonical order: the open string frequency, scale length,
+ * math mode, frequency grid, and each pickup's position, width, level,
+ * polarity and load, sorted so the order pickups were added in doesn't
+ * matter.  Values that differ by less than a quantum are the same key;
+ * a micro-inch of pickup position changes the response by far less
+ * than anything the plot can show.
+ *
+ * Entries are kept until their total size passes the byte budget, then
+ * the least recently used go first.  Everything stored is a private copy
+ * and must not be changed by the caller.  A curve that won't be asked
+ * for again, such as one frame of a pickup drag, can be looked up
+ * without being stored.
+ *
+ * The notches and peaks take a root search, so an entry only finds them
+ * the first time features asks for them, and keeps them from then on.
+ */
+
+package com.till.pickupplot;
+
+import java.util.*;
+
+class CurveCache {
+    static long DEFAULT_BUDGET = 16L << 20;
+    static double LENGTH_QUANTUM = 1.0e-6;	// inches
+    static double FREQ_QUANTUM = 1.0e-6;	// Hz
+    static double LEVEL_QUANTUM = 1.0e-9;	// of unity
+    static double INDUCTANCE_QUANTUM = 1.0e-9;	// henries
+    static double RESISTANCE_QUANTUM = 1.0e-6;	// ohms
+    static double CAPACITANCE_QUANTUM = 1.0e-18;	// farads
+    static double CONDUCTANCE_QUANTUM = 1.0e-15;	// siemens
+    static int PICKUP_WORDS = 8;
+    static int ENTRY_OVERHEAD = 128;		// bytes, a rough guess
+
+    static CurveCache shared = new CurveCache(DEFAULT_BUDGET);
+
+    long budget;
+    long bytes;
+    long hits;
+    long misses;
+    long evictions;
+    LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(64, 0.75f, true);	// in access order
+
+    CurveCache(long budget) {
+	this.budget = budget;
+    }
+
+    /**
+     * A cached curve: the response at each point, and for an envelope
+     * the smallest and largest |response| in each column and, if they've
+     * been asked for, the phase and group delay.  And the notches and 
+     * peaks once they've been asked for.  freqs is the grid, as 
+     * GuitarModel.curveFreqs has it.
+     */
+    static class Entry {
+	double fMin;
+	double fMax;
+	double freqs[];
+	double amps[];
+	double ampMin[];
+	double ampMax[];
+	double phase[];
+	double groupDelay[];
+	volatile ResponseFeatures features;	// null until features
+	boolean kept;				// counted in bytes
+
+	long size() {
+	    long n = 8L * (freqs.length + amps.length);
+	    if (null != ampMin) {
+		n += 8L * (ampMin.length + ampMax.length);
+	    }
+	    if (null != phase) {
+		n += 8L * (phase.length + groupDelay.length);
+	    }
+	    if (null != features) {
+		n += 17L * features.freq.length;
+	    }
+	    return n + ENTRY_OVERHEAD;
+	}
+    }
+
+    /**
+     * The quantized model state, with its hash worked out once.
+     */
+    static class Key {
+	long words[];
+	int hash;
+
+	Key(long words[]) {
+	    this.words = words;
+	    long h = 0xcbf29ce484222325L;
+	    for (int i = 0; i < words.length; i++) {
+		h = (h ^ words[i]) * 0x100000001b3L;
+		h ^= h >>> 29;
+	    }
+	    hash = (int) (h ^ (h >>> 32));
+	}
+
+	public int hashCode() {
+	    return hash;
+	}
+
+	public boolean equals(Object o) {
+	    return (o instanceof Key) && (hash == ((Key) o).hash) &&
+		Arrays.equals(words, ((Key) o).words);
+	}
+    }
+
+    static long quantize(double v, double quantum) {
+	return Math.round(v / quantum);
+    }
+
+    /**
+     * The key for m's response at count points from fMin to fMax.  An
+     * envelope's floor is part of its key; a plain curve has floor -1.
+     */
+    static Key keyFor(GuitarModel m, double fMin, double fMax, int count, double floor) {
+	PickupBank b = m.bank;
+	int n = b.count;
+	long words[] = new long[8 + PICKUP_WORDS * n];
+	words[0] = count;
+	words[1] = quantize(fMin, FREQ_QUANTUM);
+	words[2] = quantize(fMax, FREQ_QUANTUM);
+	words[3] = Double.doubleToLongBits(floor);
+	words[4] = m.fastMath ? 1 : 0;
+	words[5] = quantize(m.scaleLength, LENGTH_QUANTUM);
+	words[6] = quantize(m.stringOpenFreq, FREQ_QUANTUM);
+	words[7] = n;
+	for (int i = 0; i < n; i++) {
+	    int w = 8 + PICKUP_WORDS * i;
+	    words[w] = quantize(b.position[i], LENGTH_QUANTUM);
+	    words[w + 1] = quantize(b.width[i], LENGTH_QUANTUM);
+	    words[w + 2] = quantize(b.level[i], LEVEL_QUANTUM);
+	    words[w + 3] = b.polarity[i];
+	    words[w + 4] = quantize(b.inductance[i], INDUCTANCE_QUANTUM);
+	    words[w + 5] = quantize(b.resistance[i], RESISTANCE_QUANTUM);
+	    words[w + 6] = quantize(b.capacitance[i], CAPACITANCE_QUANTUM);
+	    words[w + 7] = quantize(b.conductance[i], CONDUCTANCE_QUANTUM);
+	    // insertion sort, pickups are few
+	    for (int j = w; (8 < j) && (0 < compare(words, j - PICKUP_WORDS, j)); 
+		 j -= PICKUP_WORDS) {
+		for (int k = 0; k < PICKUP_WORDS; k++) {
+		    long t = words[j - PICKUP_WORDS + k];
+		    words[j - PICKUP_WORDS + k] = words[j + k];
+		    words[j + k] = t;
+		}
+	    }
+	}
+	return new Key(words);
+    }
+
+    static int compare(long words[], int a, int b) {
+	for (int k = 0; k < PICKUP_WORDS; k++) {
+	    if (words[a + k] != words[b + k]) {
+		return (words[a + k] < words[b + k]) ? -1 : +1;
+	    }
+	}
+	return 0;
+    }
+
+    synchronized Entry get(Key key) {
+	Entry e = entries.get(key);
+	if (null == e) {
+	    misses++;
+	} else {
+	    hits++;
+	}
+	return e;
+    }
+
+    synchronized void put(Key key, Entry e) {
+	Entry old = entries.put(key, e);
+	if (null != old) {
+	    bytes -= old.size();
+	    old.kept = false;
+	}
+	bytes += e.size();
+	e.kept = true;
+	Iterator<Entry> i = entries.values().iterator();
+	while ((budget < bytes) && i.hasNext()) {
+	    Entry eldest = i.next();
+	    if (eldest == e) {
+		break;
+	    }
+	    bytes -= eldest.size();
+	    eldest.kept = false;
+	    i.remove();
+	    evictions++;
+	}
+    }
+
+    synchronized void clear() {
+	for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+	    i.next().kept = false;
+	}
+	entries.clear();
+	bytes = 0;
+    }
+
+    /**
+     * Like m.responseCurve, from the cache when it can be.  Leaves the 
+     * grid in the entry rather than in m.  If keep is false a new curve
+     * isn't stored, and the entry points into m's buffers, good only
+     * until m computes again.
+     */
+    Entry responseCurve(GuitarModel m, double fMin, double fMax, int count, boolean keep) {
+	Key key = keyFor(m, fMin, fMax, count, -1.0);
+	Entry e = get(key);
+	if (null == e) {
+	    e = new Entry();
+	    e.fMin = fMin;
+	    e.fMax = fMax;
+	    e.amps = m.responseCurve(fMin, fMax, count);
+	    e.freqs = m.curveFreqs;
+	    if (keep) {
+		e.amps = copy(e.amps, count);
+		e.freqs = copy(e.freqs, count);
+		put(key, e);
+	    }
+	}
+	return e;
+    }
+
+    /**
+     * Like m.responseEnvelope, from the cache when it can be.  keep is 
+     * as for responseCurve.
+     */
+    Entry responseEnvelope(GuitarModel m, double fMin, double fMax, int count, double floor,
+			   boolean keep) {
+	return responseEnvelope(m, fMin, fMax, count, floor, keep, null);
+    }
+
+    /**
+     * Same, and the phase and group delay into traces if it isn't null.
+     * A new curve and its traces come from one pass, as 
+     * m.responseEnvelope with traces does them.  From a cached curve 
+     * only the phase and group delay in traces are filled in.
+     */
+    Entry responseEnvelope(GuitarModel m, double fMin, double fMax, int count, double floor,
+			   boolean keep, ComplexResponse traces) {
+	Key key = keyFor(m, fMin, fMax, count, floor);
+	Entry e = get(key);
+	if (null == e) {
+	    e = new Entry();
+	    e.fMin = fMin;
+	    e.fMax = fMax;
+	    e.amps = (null == traces) ? m.responseEnvelope(fMin, fMax, count, floor)
+		: m.responseEnvelope(fMin, fMax, count, floor, traces);
+	    e.freqs = m.curveFreqs;
+	    e.ampMin = m.envelopeMin;
+	    e.ampMax = m.envelopeMax;
+	    if (keep) {
+		e.amps = copy(e.amps, count);
+		e.freqs = copy(e.freqs, count);
+		e.ampMin = copy(e.ampMin, count);
+		e.ampMax = copy(e.ampMax, count);
+		if (null != traces) {
+		    e.phase = copy(traces.phase, count);
+		    e.groupDelay = copy(traces.groupDelay, count);
+		}
+		put(key, e);
+	    }
+	} else if (null != traces) {
+	    traces(e, m, count, traces);
+	}
+	return e;
+    }
+
+    /**
+     * The phase and group delay of cached entry e into traces, worked out
+     * in m the first time and kept in e after that.  m has to be in the 
+     * state e was computed from.
+     */
+    void traces(Entry e, GuitarModel m, int count, ComplexResponse traces) {
+	double phase[];
+	double groupDelay[];
+	synchronized (this) {
+	    phase = e.phase;
+	    groupDelay = e.groupDelay;
+	}
+	if (null != phase) {
+	    traces.setSize(count);
+	    System.arraycopy(phase, 0, traces.phase, 0, count);
+	    System.arraycopy(groupDelay, 0, traces.groupDelay, 0, count);
+	    return;
+	}
+	m.complexResponse(e.freqs, count, traces);
+	synchronized (this) {
+	    if (e.kept && (null == e.phase)) {
+		long size = e.size();
+		e.phase = copy(traces.phase, count);
+		e.groupDelay = copy(traces.groupDelay, count);
+		bytes += e.size() - size;
+	    }
+	}
+    }
+
+    /**
+     * e's notches and peaks, as m.findFeatures finds them.  m has to be
+     * in the state e was computed from.  They're found the first time
+     * and kept in e after that.
+     */
+    ResponseFeatures features(Entry e, GuitarModel m) {
+	ResponseFeatures f = e.features;
+	if (null != f) {
+	    return f;
+	}
+	f = m.findFeatures(e.fMin, e.fMax, new ResponseFeatures());
+	synchronized (this) {
+	    if (null == e.features) {
+		long size = e.size();
+		e.features = f;
+		if (e.kept) {
+		    bytes += e.size() - size;
+		}
+	    }
+	    return e.features;
+	}
+    }
+
+    static double[] copy(double a[], int count) {
+	double c[] = new double[count];
+	System.arraycopy(a, 0, c, 0, count);
+	return c;
+    }
+
+    public synchronized String toString() {
+	return "hits " + hits + ", misses " + misses + ", evictions " + evictions +
+	    ", entries " + entries.size() + ", bytes " + bytes + " of " + budget;
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A fixed-size log of timestamped events, for LifeCycle.
+ *
+ *   EventLog log = new EventLog(256, System.out);
+ *   log.add("started");			// from any thread
+ *   int n = log.latest(entries);	// the last entries.length, for paint
+ *
+ * add never blocks or waits on I/O: it takes the next sequence number with
+ * one atomic increment and puts a new EventLogEntry in that number's slot
+ * of a ring, over the oldest entry once the ring is full.  A background
+ * writer thread drains the ring to the stream every DRAIN_INTERVAL ms, in
+ * order, and notes how many entries were overwritten before it got to
+ * them.  Memory stays at the ring's capacity however long the log runs.
+ * close does the last drain itself rather than wait for the writer.
+ */
+public class EventLog {
+ static int DRAIN_INTERVAL = 50; //ms
+
+ AtomicReferenceArray<EventLogEntry> slots;
+ int mask;
+ AtomicLong next = new AtomicLong(); // ׸ ȣ
+ long start = System.currentTimeMillis();
+ AtomicLong lost = new AtomicLong();
+
+ PrintStream out;
+ Thread writer;
+ volatile boolean closed = false;
+ //Ʒ  ü   
+ SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+ long drained = 0; //  ȣ
+
+ /**
+  * A log of the last capacity events, rounded up to a power of two,
+  * drained to out by a background thread.  If out is null the events are
+  * only kept for latest.
+  */
+ public EventLog(int capacity, PrintStream out) {
+  if (capacity <= 0)
+   throw new IllegalArgumentException("bad capacity " + capacity);
+  int size = Integer.highestOneBit(capacity);
+  if (size < capacity)
+   size <<= 1;
+  slots = new AtomicReferenceArray<EventLogEntry>(size);
+  mask = size - 1;
+  this.out = out;
+  if (null != out) {
+   writer = new Thread("EventLog writer") {
+    public void run() {
+     write();
+    }
+   };
+   writer.setDaemon(true);
+   writer.start();
+  }
+ }
+
+ /**
+  * Log message, now.  Safe from any thread, without locks.
+  */
+ public void add(String message) {
+  long seq = next.getAndIncrement();
+  slots.set((int) (seq & mask), new EventLogEntry(seq, System.currentTimeMillis(), message));
+ }
+
+ /**
+  * Up to dst.length of the most recent entries into dst, oldest first.
+  * The number copied.
+  */
+ public int latest(EventLogEntry dst[]) {
+  long end = next.get();
+  int n = 0;
+  //ֱ ͺ ,   ̰ų  ڸ ǳʶڴ
+  for (long seq = end - 1; (0 <= seq) && (end - seq <= slots.length()) && (n < dst.length); seq--) {
+   EventLogEntry e = slots.get((int) (seq & mask));
+   if ((null != e) && (seq == e.seq))
+    dst[n++] = e;
+  }
+  for (int i = 0, j = n - 1; i < j; i++, j--) {
+   EventLogEntry t = dst[i];
+   dst[i] = dst[j];
+   dst[j] = t;
+  }
+  return n;
+ }
+
+ /**
+  * How many entries were overwritten before the writer got to them.
+  */
+ public long lost() {
+  return lost.get();
+ }
+
+ /**
+  * Write out what's left, on this thread, and stop the writer.  The
+  * stream is closed too, unless it's System.out or System.err.  Events
+  * added after this are kept for latest but not written.
+  */
+ public void close() {
+  if (null == writer) {
+   closed = true;
+   return;
+  }
+  //writer  ̸ װ͸ ٸ
+  synchronized (this) {
+   if (closed)
+    return;
+   closed = true;
+   drain();
+   if ((System.out != out) && (System.err != out))
+    out.close();
+  }
+  writer.interrupt();
+ }
+
+ void write() {
+  while (true) {
+   synchronized (this) {
+    if (closed)
+     return;
+    drain();
+   }
+   try {
+    Thread.sleep(DRAIN_INTERVAL);
+   } catch (InterruptedException e) {
+   }
+  }
+ }
+
+ // ׸ ʴ 
+ void drain() {
+  long end = next.get();
+  long skipped = 0;
+  //  Ѱ и  ̹ 
+  if (slots.length() < end - drained) {
+   skipped = end - slots.length() - drained;
+   drained = end - slots.length();
+  }
+  boolean wrote = false;
+  while (drained < end) {
+   EventLogEntry e = slots.get((int) (drained & mask));
+   if ((null == e) || (e.seq < drained))
+    break; //  : 
+   if (drained < e.seq) {
+    skipped++; //  
+   } else {
+    if (0 < skipped) {
+     out.println("(" + skipped + " events lost)");
+     lost.addAndGet(skipped);
+     skipped = 0;
+    }
+    out.println(format.format(new Date(e.time)) + " " + e.message);
+    wrote = true;
+   }
+   drained++;
+  }
+  if (0 < skipped) {
+   out.println("(" + skipped + " events lost)");
+   lost.addAndGet(skipped);
+   wrote = true;
+  }
+  if (wrote)
+   out.flush();
+ }
+}
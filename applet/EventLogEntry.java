@@ -0,0 +1,14 @@
+/**
+ * One logged event: its sequence number, when, and what.
+ */
+class EventLogEntry {
+ long seq;
+ long time; //System.currentTimeMillis()
+ String message;
+
+ EventLogEntry(long seq, long time, String message) {
+  this.seq = seq;
+  this.time = time;
+  this.message = message;
+ }
+}
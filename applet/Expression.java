@@ -0,0 +1,752 @@
+package com.till.calculator;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Infix expressions for the calculator, compiled once and evaluated many
+ * times.
+ *
+ *   Expression e = Expression.compile("2*x^2 + 3*(y - 1)");
+ *   double v = e.eval(new double[] {1.5, 4});	// values in variables order
+ *   e.eval(columns, out, count);		// columns[k] holds variable k's values
+ *   double w = Expression.evaluate("(1 + 2) * 3");	// no variables
+ *
+ * The text is parsed into a tree of ExprAst with the usual precedence:
+ * ^ (right to left) binds tightest, then unary minus, then * and /, then
+ * + and -.  A name followed by ( calls one of ExprUnary.FUNCTIONS, or
+ * min, max or pow; pi and e are constants; any other name is a variable,
+ * numbered in order of first appearance.  The tree is then compiled into
+ * ExprNodes: constant parts are folded, x^2 becomes a square, and an
+ * operator with a constant or variable on one side gets a node of its
+ * own, so evaluating is a walk over final fields with no lookups.
+ *
+ * Compiled expressions are immutable and kept by their text, so compiling
+ * the same text again is a table lookup.  Text in a char array, as the
+ * calculator keeps it, is looked up without making a String.  Batch evaluation goes BLOCK
+ * values at a time, each node over the whole block before the next, so
+ * each step is a tight loop over arrays.
+ *
+ * Bad text throws IllegalArgumentException, with the position.
+ */
+public class Expression {
+ static int BLOCK = 256;
+ static int MAX_CACHED = 256;
+ static int RECENT = 64; //2 ŵ
+ static int PROBES = 4;
+ static Hashtable<String, Expression> cache = new Hashtable<String, Expression>();
+ static Expression recent[] = new Expression[RECENT]; // 迭 ã ĳ
+ static double NO_VALUES[] = new double[0];
+
+ String source;
+ String variables[];
+ ExprNode root;
+ int scratchDepth;
+
+ Expression(String source) {
+  this.source = source;
+  ExpressionParser parser = new ExpressionParser(source);
+  ExprAst ast = parser.parse();
+  variables = new String[parser.names.size()];
+  parser.names.copyInto(variables);
+  root = ast.compile();
+  scratchDepth = root.depth();
+ }
+
+ /**
+  * The compiled expression for source, from the cache if it's been
+  * compiled before.
+  */
+ public static Expression compile(String source) {
+  Expression e = cache.get(source);
+  if (null != e)
+   return e;
+  e = new Expression(source);
+  synchronized (cache) {
+   //  ° 
+   if (MAX_CACHED <= cache.size())
+    cache.clear();
+   cache.put(source, e);
+  }
+  return e;
+ }
+
+ /**
+  * The compiled expression for the first length chars of source.  Text
+  * that's been compiled lately is found without allocating.
+  */
+ public static Expression compile(char source[], int length) {
+  int h = 0;
+  for (int i = 0; i < length; i++)
+   h = 31 * h + source[i];
+  int home = h ^ (h >>> 16);
+  //̿ PROBES ڸ ,   ڸ ù ڸ ִ´
+  int free = home & (RECENT - 1);
+  for (int i = PROBES - 1; 0 <= i; i--) {
+   int slot = (home + i) & (RECENT - 1);
+   Expression e = recent[slot];
+   if (null == e)
+    free = slot;
+   else if (e.matches(source, length))
+    return e;
+  }
+  Expression e = compile(new String(source, 0, length));
+  recent[free] = e;
+  return e;
+ }
+
+ /**
+  * The value of text, which may not have variables.
+  */
+ public static double evaluate(String text) {
+  Expression e = compile(text);
+  if (0 < e.variables.length)
+   throw new IllegalArgumentException("unknown name " + e.variables[0]);
+  return e.eval();
+ }
+
+ boolean matches(char s[], int length) {
+  if (source.length() != length)
+   return false;
+  for (int i = 0; i < length; i++)
+   if (source.charAt(i) != s[i])
+    return false;
+  return true;
+ }
+
+ public String[] variables() {
+  return variables.clone();
+ }
+
+ /**
+  * The index of variable name in the values, or -1.
+  */
+ public int variable(String name) {
+  for (int i = 0; i < variables.length; i++)
+   if (variables[i].equals(name))
+    return i;
+  return -1;
+ }
+
+ public double eval() {
+  return eval(NO_VALUES);
+ }
+
+ /**
+  * The value with the variables set to values, in variables order.
+  */
+ public double eval(double values[]) {
+  if (values.length < variables.length)
+   throw new IllegalArgumentException(source + " needs " + variables.length + " values");
+  return root.eval(values);
+ }
+
+ /**
+  * The values for count sets of variables into out: columns[k][i] is
+  * variable k in set i.
+  */
+ public void eval(double columns[][], double out[], int count) {
+  if (columns.length < variables.length)
+   throw new IllegalArgumentException(source + " needs " + variables.length + " columns");
+  for (int k = 0; k < variables.length; k++)
+   if (columns[k].length < count)
+    throw new IllegalArgumentException("column " + variables[k] + " is short");
+  if (out.length < count)
+   throw new IllegalArgumentException("out is short");
+  double scratch[][] = new double[scratchDepth][Math.min(BLOCK, count)];
+  for (int off = 0; off < count; off += BLOCK)
+   root.eval(columns, off, Math.min(BLOCK, count - off), out, off, scratch, 0);
+ }
+
+ public String toString() {
+  return source;
+ }
+}
+
+/**
+ * Recursive descent over the text, one ExprAst per operator.
+ */
+class ExpressionParser {
+ static String CONSTANT_NAMES[] = {"pi", "e"};
+ static double CONSTANTS[] = {Math.PI, Math.E};
+
+ String s;
+ int pos = 0;
+ Vector<String> names = new Vector<String>();		// variables, in order of first appearance
+
+ ExpressionParser(String s) {
+  this.s = s;
+ }
+
+ ExprAst parse() {
+  ExprAst a = sum();
+  if (pos < s.length())
+   throw error("unexpected " + s.charAt(pos));
+  return a;
+ }
+
+ //, : ʺ
+ ExprAst sum() {
+  ExprAst a = product();
+  while (true) {
+   char c = peek();
+   if (('+' != c) && ('-' != c))
+    return a;
+   pos++;
+   a = ExprAst.binary(c, a, product());
+  }
+ }
+
+ //, : ʺ
+ ExprAst product() {
+  ExprAst a = unary();
+  while (true) {
+   char c = peek();
+   if (('*' != c) && ('/' != c))
+    return a;
+   pos++;
+   a = ExprAst.binary(c, a, unary());
+  }
+ }
+
+ //ȣ: -x^2  -(x^2)
+ ExprAst unary() {
+  char c = peek();
+  if ('-' == c) {
+   pos++;
+   return ExprAst.unary(ExprUnary.NEG, unary());
+  }
+  if ('+' == c) {
+   pos++;
+   return unary();
+  }
+  return power();
+ }
+
+ //ŵ: ʺ
+ ExprAst power() {
+  ExprAst a = primary();
+  if ('^' != peek())
+   return a;
+  pos++;
+  return ExprAst.binary('^', a, unary());
+ }
+
+ ExprAst primary() {
+  char c = peek();
+  if (pos == s.length())
+   throw error("unexpected end");
+  if ('(' == c) {
+   pos++;
+   ExprAst a = sum();
+   expect(')');
+   return a;
+  }
+  if (Character.isDigit(c) || ('.' == c))
+   return number();
+  if (Character.isLetter(c) || ('_' == c))
+   return name();
+  throw error("unexpected " + c);
+ }
+
+ ExprAst number() {
+  int start = pos;
+  while ((pos < s.length()) && (Character.isDigit(s.charAt(pos)) || ('.' == s.charAt(pos))))
+   pos++;
+  //: 1.5e-3
+  if ((pos < s.length()) && (('e' == s.charAt(pos)) || ('E' == s.charAt(pos)))) {
+   int p = pos + 1;
+   if ((p < s.length()) && (('+' == s.charAt(p)) || ('-' == s.charAt(p))))
+    p++;
+   if ((p < s.length()) && Character.isDigit(s.charAt(p))) {
+    pos = p;
+    while ((pos < s.length()) && Character.isDigit(s.charAt(pos)))
+     pos++;
+   }
+  }
+  try {
+   return ExprAst.constant(Double.parseDouble(s.substring(start, pos)));
+  } catch (NumberFormatException e) {
+   pos = start;
+   throw error("bad number");
+  }
+ }
+
+ ExprAst name() {
+  int start = pos;
+  while ((pos < s.length()) && (Character.isLetterOrDigit(s.charAt(pos)) || ('_' == s.charAt(pos))))
+   pos++;
+  String name = s.substring(start, pos);
+  if ('(' == peek()) {
+   pos++;
+   return call(name, start);
+  }
+  for (int i = 0; i < CONSTANT_NAMES.length; i++)
+   if (CONSTANT_NAMES[i].equals(name))
+    return ExprAst.constant(CONSTANTS[i]);
+  int index = names.indexOf(name);
+  if (-1 == index) {
+   index = names.size();
+   names.addElement(name);
+  }
+  return ExprAst.variable(index);
+ }
+
+ //Լ ȣ, '(' 
+ ExprAst call(String name, int start) {
+  char op = ExprBinary.operatorOf(name);
+  if (0 != op) {
+   ExprAst a = sum();
+   expect(',');
+   ExprAst b = sum();
+   expect(')');
+   return ExprAst.binary(op, a, b);
+  }
+  for (int fn = 0; fn < ExprUnary.FUNCTIONS.length; fn++)
+   if (ExprUnary.FUNCTIONS[fn].equals(name)) {
+    ExprAst a = sum();
+    expect(')');
+    return ExprAst.unary(fn, a);
+   }
+  pos = start;
+  throw error("no function " + name);
+ }
+
+ // ǳʶٰ  , ̸ 0
+ char peek() {
+  while ((pos < s.length()) && Character.isWhitespace(s.charAt(pos)))
+   pos++;
+  return (pos < s.length()) ? s.charAt(pos) : 0;
+ }
+
+ void expect(char c) {
+  if (c != peek())
+   throw error("expected " + c);
+  pos++;
+ }
+
+ IllegalArgumentException error(String message) {
+  return new IllegalArgumentException(message + " at " + (pos + 1) + " in " + s);
+ }
+}
+
+/**
+ * The parsed expression: a constant, a variable, a function of one
+ * argument or an operator on two.
+ */
+class ExprAst {
+ char kind;		// c, v, u or b
+ double value;		// c
+ int index;		// v: the variable, u: the function
+ char op;		// b
+ ExprAst a;
+ ExprAst b;
+
+ static ExprAst constant(double value) {
+  ExprAst t = new ExprAst();
+  t.kind = 'c';
+  t.value = value;
+  return t;
+ }
+
+ static ExprAst variable(int index) {
+  ExprAst t = new ExprAst();
+  t.kind = 'v';
+  t.index = index;
+  return t;
+ }
+
+ static ExprAst unary(int fn, ExprAst a) {
+  ExprAst t = new ExprAst();
+  t.kind = 'u';
+  t.index = fn;
+  t.a = a;
+  return t;
+ }
+
+ static ExprAst binary(char op, ExprAst a, ExprAst b) {
+  ExprAst t = new ExprAst();
+  t.kind = 'b';
+  t.op = op;
+  t.a = a;
+  t.b = b;
+  return t;
+ }
+
+ /**
+  * The nodes to evaluate this, folded and specialized.
+  */
+ ExprNode compile() {
+  switch (kind) {
+  case 'c':
+   return new ExprConst(value);
+  case 'v':
+   return new ExprVar(index);
+  case 'u': {
+   ExprNode x = a.compile();
+   if (x instanceof ExprConst)
+    return new ExprConst(ExprUnary.apply(index, ((ExprConst) x).value));
+   return new ExprUnary(index, x);
+  }
+  default: {
+   ExprNode x = a.compile();
+   ExprNode y = b.compile();
+   boolean constX = x instanceof ExprConst;
+   boolean constY = y instanceof ExprConst;
+   if (constX && constY)
+    return new ExprConst(ExprBinary.apply(op, ((ExprConst) x).value, ((ExprConst) y).value));
+   if (constY) {
+    double c = ((ExprConst) y).value;
+    //x^2  , x - c  x + (-c)
+    if (('^' == op) && (2.0 == c))
+     return new ExprUnary(ExprUnary.SQUARE, x);
+    if ('-' == op)
+     return new ExprBinaryConst('+', x, -c);
+    return new ExprBinaryConst(op, x, c);
+   }
+   if (constX) {
+    double c = ((ExprConst) x).value;
+    //ȯĢ Ǵ   
+    if (ExprBinary.commutes(op))
+     return new ExprBinaryConst(op, y, c);
+    return new ExprConstBinary(op, c, y);
+   }
+   if (y instanceof ExprVar)
+    return new ExprBinaryVar(op, x, ((ExprVar) y).index);
+   if ((x instanceof ExprVar) && ExprBinary.commutes(op))
+    return new ExprBinaryVar(op, y, ((ExprVar) x).index);
+   return new ExprBinary(op, x, y);
+  }
+  }
+ }
+}
+
+/**
+ * A compiled piece of an expression.  Nodes are immutable, so a compiled
+ * expression can be evaluated from any thread.
+ */
+abstract class ExprNode {
+ /**
+  * The value for one set of variables.
+  */
+ abstract double eval(double values[]);
+
+ /**
+  * The values for sets off to off + n of the columns into dst from at.
+  * scratch[depth] and on are free for the node's own use.
+  */
+ abstract void eval(double columns[][], int off, int n, double dst[], int at,
+     double scratch[][], int depth);
+
+ /**
+  * How many scratch blocks the block eval needs.
+  */
+ int depth() {
+  return 0;
+ }
+}
+
+class ExprConst extends ExprNode {
+ double value;
+
+ ExprConst(double value) {
+  this.value = value;
+ }
+
+ double eval(double values[]) {
+  return value;
+ }
+
+ void eval(double columns[][], int off, int n, double dst[], int at,
+     double scratch[][], int depth) {
+  for (int i = at; i < at + n; i++)
+   dst[i] = value;
+ }
+}
+
+class ExprVar extends ExprNode {
+ int index;
+
+ ExprVar(int index) {
+  this.index = index;
+ }
+
+ double eval(double values[]) {
+  return values[index];
+ }
+
+ void eval(double columns[][], int off, int n, double dst[], int at,
+     double scratch[][], int depth) {
+  System.arraycopy(columns[index], off, dst, at, n);
+ }
+}
+
+/**
+ * Negation, a function of one argument, or a square.
+ */
+class ExprUnary extends ExprNode {
+ static String FUNCTIONS[] = {"-", "sqrt", "abs", "exp", "log", "sin", "cos", "tan", "^2"};
+ static int NEG = 0;
+ static int SQUARE = 8;
+
+ int fn;
+ ExprNode a;
+
+ ExprUnary(int fn, ExprNode a) {
+  this.fn = fn;
+  this.a = a;
+ }
+
+ static double apply(int fn, double x) {
+  switch (fn) {
+  case 0: return -x;
+  case 1: return Math.sqrt(x);
+  case 2: return Math.abs(x);
+  case 3: return Math.exp(x);
+  case 4: return Math.log(x);
+  case 5: return Math.sin(x);
+  case 6: return Math.cos(x);
+  case 7: return Math.tan(x);
+  default: return x * x;
+  }
+ }
+
+ double eval(double values[]) {
+  return apply(fn, a.eval(values));
+ }
+
+ void eval(double columns[][], int off, int n, double dst[], int at,
+     double scratch[][], int depth) {
+  a.eval(columns, off, n, dst, at, scratch, depth);
+  int end = at + n;
+  switch (fn) {
+  case 0:
+   for (int i = at; i < end; i++)
+    dst[i] = -dst[i];
+   break;
+  case 1:
+   for (int i = at; i < end; i++)
+    dst[i] = Math.sqrt(dst[i]);
+   break;
+  case 8:
+   for (int i = at; i < end; i++)
+    dst[i] *= dst[i];
+   break;
+  default:
+   for (int i = at; i < end; i++)
+    dst[i] = apply(fn, dst[i]);
+  }
+ }
+
+ int depth() {
+  return a.depth();
+ }
+}
+
+/**
+ * An operator on two subexpressions: + - * / ^, and < and > for min and
+ * max.
+ */
+class ExprBinary extends ExprNode {
+ static String FUNCTION_NAMES[] = {"min", "max", "pow"};
+ static String FUNCTION_OPS = "<>^";
+
+ char op;
+ ExprNode a;
+ ExprNode b;
+
+ ExprBinary(char op, ExprNode a, ExprNode b) {
+  this.op = op;
+  this.a = a;
+  this.b = b;
+ }
+
+ /**
+  * The operator for a function of two arguments, or 0.
+  */
+ static char operatorOf(String name) {
+  for (int i = 0; i < FUNCTION_NAMES.length; i++)
+   if (FUNCTION_NAMES[i].equals(name))
+    return FUNCTION_OPS.charAt(i);
+  return 0;
+ }
+
+ static boolean commutes(char op) {
+  return ('+' == op) || ('*' == op) || ('<' == op) || ('>' == op);
+ }
+
+ static double apply(char op, double x, double y) {
+  switch (op) {
+  case '+': return x + y;
+  case '-': return x - y;
+  case '*': return x * y;
+  case '/': return x / y;
+  case '<': return Math.min(x, y);
+  case '>': return Math.max(x, y);
+  default: return Math.pow(x, y);
+  }
+ }
+
+ /**
+  * dst[at + i] = dst[at + i] op y[from + i], for i below n.
+  */
+ static void apply(char op, double dst[], int at, double y[], int from, int n) {
+  int d = from - at;
+  int end = at + n;
+  switch (op) {
+  case '+':
+   for (int i = at; i < end; i++)
+    dst[i] += y[i + d];
+   break;
+  case '-':
+   for (int i = at; i < end; i++)
+    dst[i] -= y[i + d];
+   break;
+  case '*':
+   for (int i = at; i < end; i++)
+    dst[i] *= y[i + d];
+   break;
+  case '/':
+   for (int i = at; i < end; i++)
+    dst[i] /= y[i + d];
+   break;
+  default:
+   for (int i = at; i < end; i++)
+    dst[i] = apply(op, dst[i], y[i + d]);
+  }
+ }
+
+ double eval(double values[]) {
+  return apply(op, a.eval(values), b.eval(values));
+ }
+
+ void eval(double columns[][], int off, int n, double dst[], int at,
+     double scratch[][], int depth) {
+  a.eval(columns, off, n, dst, at, scratch, depth);
+  double y[] = scratch[depth];
+  b.eval(columns, off, n, y, 0, scratch, depth + 1);
+  apply(op, dst, at, y, 0, n);
+ }
+
+ int depth() {
+  return Math.max(a.depth(), 1 + b.depth());
+ }
+}
+
+/**
+ * An operator with a variable on the right, read straight from its column.
+ */
+class ExprBinaryVar extends ExprNode {
+ char op;
+ ExprNode a;
+ int index;
+
+ ExprBinaryVar(char op, ExprNode a, int index) {
+  this.op = op;
+  this.a = a;
+  this.index = index;
+ }
+
+ double eval(double values[]) {
+  return ExprBinary.apply(op, a.eval(values), values[index]);
+ }
+
+ void eval(double columns[][], int off, int n, double dst[], int at,
+     double scratch[][], int depth) {
+  a.eval(columns, off, n, dst, at, scratch, depth);
+  ExprBinary.apply(op, dst, at, columns[index], off, n);
+ }
+
+ int depth() {
+  return a.depth();
+ }
+}
+
+/**
+ * An operator with a constant on the right.
+ */
+class ExprBinaryConst extends ExprNode {
+ char op;
+ ExprNode a;
+ double c;
+
+ ExprBinaryConst(char op, ExprNode a, double c) {
+  this.op = op;
+  this.a = a;
+  this.c = c;
+ }
+
+ double eval(double values[]) {
+  return ExprBinary.apply(op, a.eval(values), c);
+ }
+
+ void eval(double columns[][], int off, int n, double dst[], int at,
+     double scratch[][], int depth) {
+  a.eval(columns, off, n, dst, at, scratch, depth);
+  int end = at + n;
+  switch (op) {
+  case '+':
+   for (int i = at; i < end; i++)
+    dst[i] += c;
+   break;
+  case '*':
+   for (int i = at; i < end; i++)
+    dst[i] *= c;
+   break;
+  case '/':
+   for (int i = at; i < end; i++)
+    dst[i] /= c;
+   break;
+  default:
+   for (int i = at; i < end; i++)
+    dst[i] = ExprBinary.apply(op, dst[i], c);
+  }
+ }
+
+ int depth() {
+  return a.depth();
+ }
+}
+
+/**
+ * An operator that doesn't commute with a constant on the left: c - x,
+ * c / x or c ^ x.
+ */
+class ExprConstBinary extends ExprNode {
+ char op;
+ double c;
+ ExprNode b;
+
+ ExprConstBinary(char op, double c, ExprNode b) {
+  this.op = op;
+  this.c = c;
+  this.b = b;
+ }
+
+ double eval(double values[]) {
+  return ExprBinary.apply(op, c, b.eval(values));
+ }
+
+ void eval(double columns[][], int off, int n, double dst[], int at,
+     double scratch[][], int depth) {
+  b.eval(columns, off, n, dst, at, scratch, depth);
+  int end = at + n;
+  switch (op) {
+  case '-':
+   for (int i = at; i < end; i++)
+    dst[i] = c - dst[i];
+   break;
+  case '/':
+   for (int i = at; i < end; i++)
+    dst[i] = c / dst[i];
+   break;
+  default:
+   for (int i = at; i < end; i++)
+    dst[i] = ExprBinary.apply(op, c, dst[i]);
+  }
+ }
+
+ int depth() {
+  return b.depth();
+ }
+}
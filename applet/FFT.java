@@ -0,0 +1,74 @@
+/**
+ * In place radix 2 complex FFT of a fixed power of two size, with the
+ * twiddles and the bit reversal worked out once.
+ */
+
+package com.till.pickupplot;
+
+class FFT {
+    int n;
+    double cos[];
+    double sin[];
+    int reverse[];
+
+    FFT(int n) {
+	if ((n < 2) || (0 != (n & (n - 1)))) {
+	    throw new IllegalArgumentException("FFT size must be a power of two");
+	}
+	this.n = n;
+	cos = new double[n / 2];
+	sin = new double[n / 2];
+	for (int k = 0; k < n / 2; k++) {
+	    cos[k] = Math.cos(2.0 * Math.PI * k / n);
+	    sin[k] = Math.sin(2.0 * Math.PI * k / n);
+	}
+	reverse = new int[n];
+	int bits = Integer.numberOfTrailingZeros(n);
+	for (int i = 0; i < n; i++) {
+	    reverse[i] = Integer.reverse(i) >>> (32 - bits);
+	}
+    }
+
+    /**
+     * Forward (e^-i) or inverse (e^+i, divided by n) transform of re, im.
+     */
+    void transform(double re[], double im[], boolean inverse) {
+	for (int i = 0; i < n; i++) {
+	    int j = reverse[i];
+	    if (i < j) {
+		double t = re[i];
+		re[i] = re[j];
+		re[j] = t;
+		t = im[i];
+		im[i] = im[j];
+		im[j] = t;
+	    }
+	}
+	double sign = inverse ? 1.0 : -1.0;
+	for (int size = 2; size <= n; size <<= 1) {
+	    int half = size >> 1;
+	    int stride = n / size;
+	    for (int start = 0; start < n; start += size) {
+		for (int k = 0, t = 0; k < half; k++, t += stride) {
+		    double wr = cos[t];
+		    double wi = sign * sin[t];
+		    int a = start + k;
+		    int b = a + half;
+		    double xr = re[b] * wr - im[b] * wi;
+		    double xi = re[b] * wi + im[b] * wr;
+		    re[b] = re[a] - xr;
+		    im[b] = im[a] - xi;
+		    re[a] += xr;
+		    im[a] += xi;
+		}
+	    }
+	}
+	if (inverse) {
+	    double scale = 1.0 / n;
+	    for (int i = 0; i < n; i++) {
+		re[i] *= scale;
+		im[i] *= scale;
+	    }
+	}
+    }
+}
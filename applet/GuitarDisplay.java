@@ -0,0 +1,469 @@
+/*
+ * Displays the guitar, string, rulers, pickups.
+ */
+
+package com.till.pickupplot;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.text.*;
+
+class GuitarDisplay extends Canvas {
+    final static int MOUSE_ON_STRING = -1;
+    final static int MOUSE_ON_NONE = -2;
+    static long DOT_MARKERS = 010001000112511250L;
+    static DecimalFormat df23 = new DecimalFormat("##.###");
+    static int RULER_Y = 15;
+    static int STRING_AMP = 8;
+    static int STRING_Y = 50;
+    static int NECK_TOP = STRING_Y + 8;
+    static int PICKUP_TOP = NECK_TOP + 3;
+    static Color RULER_COLOR = new Color(63, 63, 63);
+    static Color BRIDGE_COLOR = new Color(31, 31, 31);
+    static Color FINGERBOARD_COLOR = Color.black;
+    static Color INLAY_COLOR = new Color(255, 255, 127);
+    static Color NUT_COLOR = new Color(231, 231, 231);
+    static Color NUT_OUTLINE_COLOR = new Color(63, 63, 63);
+    static Color VIB_STRING_COLOR = new Color(220, 220, 255);
+    static Color VIB_STRING_OUTLINE_COLOR = new Color(112, 112, 112);
+    static String FRET_LEGEND = "Fret number";
+    static String INCH_LEGEND = "Inches from bridge";
+    static double fingerboardThickness	= 0.25;
+    static double left = 0.15;
+    static double right = 0.95;
+    static int STRING_POINTS = 16;
+    int polyX[] = new int[3];
+    int polyY[] = new int[3];
+    double mousePressedPosition;
+    int mousePressedX;
+    int mouseOn;		// for moving pickups
+    int nutX;
+    int bridgeX;
+    double ppi; 		// pixels per inch
+    Dimension prefSize = new Dimension(600, 100);
+    PickupPlot pickupPlot;
+    GuitarModel guitarModel;
+    Font smallFont;
+
+    // The display is drawn in layers.  background holds the rulers and
+    // the guitar, and is only redrawn by updateBackground.  scene is the
+    // background with the pickups and the string on top, and only the 
+    // dirty part of it is recomposed before it's put on the screen.
+    Image background;
+    Image scene;
+    Graphics sceneG;
+    Rectangle dirty;		// null when the scene is up to date
+    PickupSprite sprites[] = new PickupSprite[0];	// as last drawn, in order
+    int frame;			// counts updateScene calls
+    int fretXs[] = new int[0];	// fretX for frets 0..fretCount
+    String numberLabels[] = new String[0];	// ruler labels,
+    int numberLabelWidths[];	// and their widths in numberLabelFont
+    Font numberLabelFont;
+    int stringX[] = new int[2 * STRING_POINTS + 1];
+    int stringY[] = new int[2 * STRING_POINTS + 1];
+    int stringFret = -1;	// the fret stringX and stringY are for
+    Rectangle stringBounds = new Rectangle();
+
+    public GuitarDisplay(PickupPlot pickupPlot, GuitarModel guitarModel) {
+	this.pickupPlot = pickupPlot;
+	this.guitarModel = guitarModel;
+	if (null != pickupPlot) {
+	    smallFont = pickupPlot.smallFont;
+	}
+    }
+
+    public Dimension preferredSize() {
+	return prefSize;
+    }
+
+    public void reshape(int x, int y, int width, int height) {
+	super.reshape(x, y, width, height);
+	nutX = (int) Math.round(left * width);
+	bridgeX = (int) Math.round(right * width);
+	if ((null != scene) && 
+	    ((scene.getWidth(null) != width) || (scene.getHeight(null) != height))) {
+	    // the next paint makes them again at the new size
+	    background = null;
+	    scene = null;
+	    sceneG = null;
+	}
+	if ((null != sceneG) && (null != getFont())) {
+	    sceneG.setFont(getFont());
+	}
+	updateBackground();
+    }
+
+    /**
+     * Make the offscreen images and draw the background, unless that's 
+     * been done already.  This is put off until the first paint, so the
+     * applet can be laid out and started without waiting for images and
+     * fonts.  Returns false if there's no size to make them at yet.
+     */
+    boolean makeImages() {
+	if (null != scene) {
+	    return true;
+	}
+	Dimension d = size();
+	if ((d.width <= 0) || (d.height <= 0)) {
+	    return false;
+	}
+	background = newImage(d.width, d.height);
+	scene = newImage(d.width, d.height);
+	sceneG = scene.getGraphics();
+	if (null != getFont()) {
+	    sceneG.setFont(getFont());
+	}
+	updateBackground();
+	return true;
+    }
+
+    /**
+     * An offscreen image.  Without a peer (headless, or not yet shown)
+     * createImage gives us nothing, so fall back to a BufferedImage.
+     */
+    Image newImage(int width, int height) {
+	Image i = createImage(width, height);
+	if (null == i) {
+	    i = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+	return i;
+    }
+
+    /*
+     * The rulers and the guitar drawing don't change very much, so they
+     * are placed on a background offscreen bitmap.  Call this to update 
+     * them, after changing the scale length or the number of frets.
+     */
+    public void updateBackground() {
+	ppi = (float) (bridgeX - nutX) / guitarModel.scaleLength;
+	int fretCount = guitarModel.fretCount;
+	if (fretXs.length != fretCount + 1) {
+	    fretXs = new int[fretCount + 1];
+	}
+	for (int f = 0; f <= fretCount; f++) {
+	    fretXs[f] = bridgeX - (int) Math.round(ppi * guitarModel.fretPosition(f));
+	}
+	if (null == background) {
+	    // makeImages will be back
+	    return;
+	}
+	long t0 = RenderMetrics.start();
+	Graphics og = background.getGraphics();
+	// what super.paint would clear to, even without a peer
+	og.setColor(getBackground());
+	og.fillRect(0, 0, background.getWidth(null), background.getHeight(null));
+	drawRuler(og);
+	drawGuitar(og);
+	stringFret = -1;
+	Dimension d = size();
+	damage(new Rectangle(0, 0, d.width, d.height));
+	updateScene();
+	RenderMetrics.stop(RenderMetrics.UPDATE_BACKGROUND, t0);
+    }
+
+    /*
+     * Work out what has moved since the last frame and repaint just that:
+     * each changed pickup's old and new place, any removed pickup's old
+     * place, and the string if the played fret has changed.  Pickups that
+     * haven't changed keep their sprites and cost nothing.
+     */
+    public void updateScene() {
+	if (null == scene) {
+	    return;
+	}
+	frame++;
+	FontMetrics fm = sceneG.getFontMetrics();
+	int pickupCount = guitarModel.pickupCount();
+	PickupSprite drawn[] = sprites;
+	sprites = new PickupSprite[pickupCount];
+	for (int i = 0; i < pickupCount; i++) {
+	    Pickup p = guitarModel.getPickup(i);
+	    if (null == p.sprite) {
+		p.sprite = new PickupSprite();
+	    }
+	    PickupSprite s = p.sprite;
+	    s.frame = frame;
+	    Rectangle old = s.bounds;
+	    if (s.update(p, this, fm)) {
+		damage(old);
+		damage(s.bounds);
+	    } else if ((i < drawn.length) && (drawn[i] != s)) {
+		// same pickup, new place in the stacking order
+		damage(s.bounds);
+	    }
+	    sprites[i] = s;
+	}
+	for (int i = 0; i < drawn.length; i++) {
+	    if (drawn[i].frame != frame) {
+		// removed
+		damage(drawn[i].bounds);
+	    }
+	}
+	if (stringFret != guitarModel.playedFret) {
+	    stringFret = guitarModel.playedFret;
+	    layoutVibString();
+	    damage(stringBounds);
+	}
+    }
+
+    /**
+     * Mark this part of the scene to be recomposed and repainted.
+     */
+    void damage(Rectangle r) {
+	if (null == r) {
+	    return;
+	}
+	dirty = (null == dirty) ? new Rectangle(r.x, r.y, r.width, r.height) : dirty.union(r);
+	repaint(r.x, r.y, r.width, r.height);
+    }
+
+    /*
+     * The scene covers everything, so there's no need to clear first.
+     */
+    public void update(Graphics g) {
+	paint(g);
+    }
+
+    public void paint(Graphics g) {
+	if (!makeImages()) {
+	    return;
+	}
+	long t0 = RenderMetrics.start();
+	if (null != dirty) {
+	    compose(dirty);
+	    dirty = null;
+	}
+	g.drawImage(scene, 0, 0, null);
+	RenderMetrics.stop(RenderMetrics.GUITAR_PAINT, t0);
+    }
+
+    /**
+     * Redraw the scene inside r, from the background up.
+     */
+    void compose(Rectangle r) {
+	sceneG.setClip(r.x, r.y, r.width, r.height);
+	sceneG.drawImage(background, 0, 0, null);
+	FontMetrics fm = sceneG.getFontMetrics();
+	for (int i = 0; i < sprites.length; i++) {
+	    if (r.intersects(sprites[i].bounds)) {
+		sprites[i].draw(sceneG, fm);
+	    }
+	}
+	if (r.intersects(stringBounds)) {
+	    drawVibString(sceneG);
+	}
+    }
+
+    /**
+     * Make sure numberLabels covers 0..n and its widths are for fm.
+     */
+    void layoutNumberLabels(int n, FontMetrics fm) {
+	if (numberLabels.length <= n) {
+	    numberLabels = new String[n + 1];
+	    for (int i = 0; i <= n; i++) {
+		numberLabels[i] = "" + i;
+	    }
+	    numberLabelFont = null;
+	}
+	if (numberLabelFont != fm.getFont()) {
+	    numberLabelWidths = new int[numberLabels.length];
+	    for (int i = 0; i < numberLabels.length; i++) {
+		numberLabelWidths[i] = fm.stringWidth(numberLabels[i]);
+	    }
+	    numberLabelFont = fm.getFont();
+	}
+    }
+
+    /**
+     * Draw the inches ruler above the neck.
+     */
+    void drawRuler(Graphics g) {
+	if (null != smallFont) {
+	    g.setFont(smallFont);
+	}
+	FontMetrics fm = g.getFontMetrics();
+	int tickLength = 3;
+	int textUp = 3;
+	int textHeight = fm.getHeight();
+	int xPos;
+	layoutNumberLabels(Math.max((int) guitarModel.scaleLength, guitarModel.fretCount), fm);
+	g.setColor(RULER_COLOR);
+	g.drawLine(nutX, RULER_Y, bridgeX, RULER_Y);
+	// draw inch ruler
+	g.drawString(INCH_LEGEND, nutX - fm.stringWidth(INCH_LEGEND) -4, RULER_Y);
+	for (int d = 0; d <= guitarModel.scaleLength; d++) {
+	    xPos = bridgeX - (int) Math.round(d * ppi);
+	    g.drawLine(xPos, RULER_Y - tickLength, xPos, RULER_Y);
+	    if (0 == d % 2) {
+		g.drawString(numberLabels[d], xPos - numberLabelWidths[d] / 2, RULER_Y - tickLength);
+	    }
+	}
+		
+	// draw fret ruler
+	g.drawString(FRET_LEGEND, nutX - fm.stringWidth(FRET_LEGEND) - 4, RULER_Y + textHeight);
+	for (int f = 0; f <= guitarModel.fretCount; f++) {
+	    xPos = fretX(f);
+	    g.drawLine(xPos, RULER_Y, xPos, RULER_Y + tickLength);
+	    // fret markers
+	    if (0 != (1L & (DOT_MARKERS >>> f))) {
+		g.drawString(numberLabels[f], xPos - numberLabelWidths[f] / 2, RULER_Y + textHeight);
+	    }
+	}
+			
+    }
+
+    void drawGuitar(Graphics g) {
+	int bodyDescent = (int) Math.round(0.375 * ppi);
+		
+	// draw neck & fingerboard
+	int fingerboardThicknessP = (int) Math.round(fingerboardThickness * ppi);
+	int neckRight = fretX(guitarModel.fretCount);
+		
+	g.setColor(FINGERBOARD_COLOR);
+	g.fillRect(nutX, NECK_TOP, neckRight - nutX, fingerboardThicknessP);
+		
+	// draw frets
+	int xPos;
+	int xPosPrev = nutX;
+	for (int f = 0; f <= guitarModel.fretCount; f++) {
+	    xPos = fretX(f);
+	    g.setColor(Color.white);
+	    g.drawLine(xPos, NECK_TOP, xPos, NECK_TOP + fingerboardThicknessP);
+	    // fret markers
+	    if (0 != (1L & (DOT_MARKERS >>> f))) {
+		g.setColor((0 == (f % 12)) ? INLAY_COLOR : Color.white);
+		g.fillOval((int) Math.round((xPos + xPosPrev) / 2.0), 
+			   NECK_TOP, 
+			   fingerboardThicknessP, fingerboardThicknessP);
+	    }
+	    xPosPrev = xPos - fingerboardThicknessP;
+	}
+		
+	// draw nut
+	int nutHalfWidth = 5;
+	polyX[0] = nutX;
+	polyX[1] = nutX + nutHalfWidth;
+	polyX[2] = nutX - nutHalfWidth;
+	polyY[0] = STRING_Y;
+	polyY[1] = NECK_TOP;
+	polyY[2] = NECK_TOP;
+	g.setColor(NUT_COLOR);
+	g.fillPolygon(polyX, polyY, 3);
+	g.setColor(NUT_OUTLINE_COLOR);
+	g.drawPolygon(polyX, polyY, 3);
+		
+	// draw bridge
+	int length = bridgeX - nutX;
+	polyX[0] += length;
+	polyX[1] += length;
+	polyX[2] += length;
+	g.setColor(BRIDGE_COLOR);
+	g.fillPolygon(polyX, polyY, 3);
+	int bridgeWidth = 10;
+	g.fillRect(bridgeX - bridgeWidth / 2, NECK_TOP, bridgeWidth, bodyDescent);
+    }
+
+    /**
+     * Work out the vibrating string polygon for the played fret.
+     * n is the number of points computed.
+     * the polygon is 2 * n + 1 ponts
+     */
+    void layoutVibString() {
+	int leftX = fretX(guitarModel.playedFret);
+	int n = STRING_POINTS;
+	int last = 2 * n;
+	double incX = (bridgeX - leftX) / (double) n;
+	double incY = Math.PI / n;
+	for (int i = 0; i <= n; i++) {
+	    double dist = STRING_AMP * Math.sin(i *incY);
+	    stringX[i] = leftX + (int) Math.round(i * incX);
+	    stringY[i] = (int) Math.round(STRING_Y - dist);
+	    stringX[last - i] = stringX[i];
+	    stringY[last - i] = (int) Math.round(STRING_Y + dist);
+	}
+	int x0 = Math.min(nutX, leftX);
+	stringBounds = new Rectangle(x0, STRING_Y - STRING_AMP, 
+				     Math.max(bridgeX, leftX) - x0 + 1, 2 * STRING_AMP + 1);
+    }
+
+    void drawVibString(Graphics g) {
+	int count = stringX.length;
+	g.setColor(VIB_STRING_COLOR);
+	g.fillPolygon(stringX, stringY, count);
+	g.setColor(VIB_STRING_OUTLINE_COLOR);
+	g.drawPolygon(stringX, stringY, count);
+	g.drawLine(nutX, STRING_Y, bridgeX, STRING_Y);
+    }
+
+    public boolean mouseDown(Event evt, int x, int y) {
+	int onPickup = -1;
+	if (PICKUP_TOP <= y) {
+	    double xInches = (bridgeX - x) / ppi;
+	    onPickup = guitarModel.pickupAt(xInches);
+	}
+	if (0 <= onPickup) {
+	    // fast math while dragging, exact again on mouseUp
+	    guitarModel.fastMath = true;
+	    mouseOn = onPickup;
+	    mousePressedX = x;
+	    mousePressedPosition = guitarModel.getPickup(onPickup).position;
+	} else if (onString(x, y)) {
+	    mouseOn = MOUSE_ON_STRING;
+	} else {
+	    mouseOn = MOUSE_ON_NONE;
+	    return super.mouseDown(evt, x, y);
+	}
+	return true;
+    }
+
+    /**
+     * Is this mouse point in the string region.
+     */
+    boolean onString(int x, int y) {
+	return ((STRING_Y - STRING_AMP) < y) && (y < (STRING_Y + STRING_AMP));
+    }
+    
+    public boolean mouseDrag(Event evt, int x, int y) {
+	if (0 <= mouseOn) {
+	    pickupPlot.inputTime = RenderMetrics.start();
+	    Pickup p = guitarModel.getPickup(mouseOn);
+	    p.position = mousePressedPosition - (x - mousePressedX) / ppi;
+	    p.updateControlPanel();
+	    pickupPlot.updateDisplay();
+	} else if (MOUSE_ON_STRING == mouseOn) {
+	    guitarModel.playedFret = xToFret(x);
+	    pickupPlot.responsePlot.setLineCursor(guitarModel.fretFreq());
+	    pickupPlot.responsePlot.repaint();
+	    //pickupPlot.updateDisplay();****
+	    updateScene();
+	} else {
+	    return super.mouseDrag(evt, x, y);
+	} 
+	return true;
+    }
+
+    public boolean mouseUp(Event evt, int x, int y) {
+	if (0 <= mouseOn) {
+	    mouseOn = MOUSE_ON_NONE;
+	    guitarModel.fastMath = false;
+	    pickupPlot.updateDisplay();
+	    return true;
+	}
+	return super.mouseUp(evt, x, y);
+    }
+
+    int xToFret(int x) {
+	double ratio = (double) (bridgeX - nutX) / (double) (bridgeX - x);
+	return (int) Math.round((12.0 / Math.log(2.0)) * Math.log(ratio));
+    }
+	
+    /**
+     * return the pixel x value of this fret.
+     */
+    int fretX(int fret) {
+	if ((0 <= fret) && (fret < fretXs.length)) {
+	    return fretXs[fret];
+	}
+	return bridgeX - (int) Math.round(ppi * guitarModel.fretPosition(fret));
+    }
+}
@@ -0,0 +1,1076 @@
+package com.till.pickupplot;
+
+import java.util.*;
+
+class GuitarModel {
+    double stringOpenFreq = 110.0;
+    double scaleLength = 25.5;
+    int fretCount = 24;
+    int playedFret = 0;
+    Pickup pickups[] = new Pickup[0];	// replaced whole, never changed in place
+    volatile PickupBank bank = PickupBank.EMPTY;
+    boolean fastMath = false;	// use FastTrig instead of Math.sin
+    StringSet strings;		// null for just the one string at stringOpenFreq
+
+    // the cable and pots every pickup's coil drives, with the coil's own
+    // capacitance in with the cable's; the volume and tone pots are in
+    // parallel
+    static String LOAD_NAMES[] = {
+	"250K pots, 15 ft cable", "500K pots, 15 ft cable", "250K pots, 30 ft cable"};
+    static double LOAD_CAPACITANCE[] = {550.0e-12, 550.0e-12, 1000.0e-12};
+    static double LOAD_RESISTANCE[] = {125.0e3, 250.0e3, 125.0e3};
+    double loadCapacitance = LOAD_CAPACITANCE[0];
+    double loadConductance = 1.0 / LOAD_RESISTANCE[0];
+
+    double radRelFreqs[];	// scratch for the batch responseAt
+
+    // The cached response curve.  curveBank is the bank it was computed
+    // from, and curveContributions holds each of its pickups' share of 
+    // the total, so moving one pickup only recomputes that one.
+    double curveFreqs[];
+    double curveRadRelFreqs[];
+    double curve[];
+    int curveCount;
+    double curveFMin;
+    double curveFMax;
+    double curveScaleLength;
+    double curveStringOpenFreq;
+    boolean curveFastMath;
+    PickupBank curveBank = PickupBank.EMPTY;
+    double curveContributions[][] = new double[0][];
+
+    // With a loaded pickup in the bank, each contribution is still just
+    // the string's part; curve and curveIm hold the sum of each times its
+    // load, and responseCurve returns curveMagnitude.  The loads on the
+    // grid are in loadCurves, one for each different load seen, shared
+    // by all the pickups that drive it.
+    static int MAX_LOAD_CURVES = 16;
+    double curveOmegas[];
+    double curveIm[];
+    double curveMagnitude[];
+    Vector<LoadCurve> loadCurves = new Vector<LoadCurve>();
+    GuitarModel loadsFrom;	// another model on our grid whose loads we share
+
+    // scratch for the loaded complexResponse
+    double termRe[];
+    double termSlope[];
+    double termLoadRe[];
+    double termLoadIm[];
+    double termLoadSlopeRe[];
+    double termLoadSlopeIm[];
+    double termOmegas[];
+
+    // The smallest and largest |response| in each column of the curve,
+    // from responseEnvelope, and how many evaluations that took.
+    static double ENVELOPE_TOLERANCE = 0.06;	// about 0.5 dB
+    static int ENVELOPE_MAX_DEPTH = 6;
+    double envelopeMin[];
+    double envelopeMax[];
+    double traceMagnitude[];	// the loaded curve, from complexResponse
+    int envelopeEvaluations;
+    double envelopeLogStep;
+    double envelopeCurvature;
+    double envelopeFloor;
+
+    // findFeatures steps along the response this many times per half 
+    // cycle of its fastest term, splits steps at most FEATURE_MAX_DEPTH
+    // times, and refines each bracketed root to FEATURE_TOLERANCE.  
+    // However wide the range, it stops after FEATURE_MAX_NULLS half 
+    // cycles.  featureBound[n] bounds the response's n'th derivative.
+    static int FEATURE_STEPS = 2;
+    static int FEATURE_MAX_DEPTH = 16;
+    static double FEATURE_TOLERANCE = 1.0e-12;
+    static int FEATURE_MAX_ITERATIONS = 100;
+    static int FEATURE_MAX_NULLS = 10000;
+    double featureBound[] = new double[4];
+
+    // stringCurves keeps a model for each string, each with its own 
+    // cached curve.  Their banks are ours moved by the string's offset,
+    // made from stringBanksFrom and stringBanksFor, and they share the
+    // first one's loads.
+    GuitarModel stringModels[] = new GuitarModel[0];
+    PickupBank stringBanksFrom;
+    StringSet stringBanksFor;
+    double stringCurves[][] = new double[0][];
+    double stringFreqs[];
+    double stringAverage[];
+
+    public GuitarModel() {
+    }
+
+    /**
+     * Return a copy of the physical parameters and the pickups.
+     * The pickups are shared, but the bank is never changed once 
+     * published, so the copy is safe to hand to another thread.
+     * The copy has no cached curve.
+     */
+    GuitarModel copy() {
+	GuitarModel m = new GuitarModel();
+	m.setFrom(this);
+	return m;
+    }
+
+    /**
+     * Make this model match m.  Our cached curve is kept, and the 
+     * contributions of pickups that haven't changed carry over.
+     */
+    void setFrom(GuitarModel m) {
+	stringOpenFreq = m.stringOpenFreq;
+	scaleLength = m.scaleLength;
+	fretCount = m.fretCount;
+	playedFret = m.playedFret;
+	fastMath = m.fastMath;
+	strings = m.strings;
+	loadCapacitance = m.loadCapacitance;
+	loadConductance = m.loadConductance;
+	pickups = m.pickups;
+	bank = m.bank;
+    }
+
+    /**
+     * Make the current pickup parameters visible to the response 
+     * computations.  Call this after changing any pickup.
+     */
+    void publishPickups() {
+	bank = new PickupBank(pickups);
+    }
+	
+    int pickupCount() {
+	return pickups.length;
+    }
+
+    /**
+     * Have every pickup drive load i of LOAD_NAMES.
+     */
+    void setLoad(int i) {
+	loadCapacitance = LOAD_CAPACITANCE[i];
+	loadConductance = 1.0 / LOAD_RESISTANCE[i];
+	for (int k = 0; k < pickups.length; k++) {
+	    pickups[k].capacitance = loadCapacitance;
+	    pickups[k].conductance = loadConductance;
+	}
+	publishPickups();
+    }
+
+    Pickup getPickup(int i) {
+	return pickups[i];
+    }
+	
+    Pickup addPickup() {
+	int pickupCount = pickups.length;
+	Pickup newPickup = new Pickup(pickupCount + 1);
+	newPickup.position = bestLocationForANewPickup();
+	newPickup.capacitance = loadCapacitance;
+	newPickup.conductance = loadConductance;
+	Pickup newPickups[] = new Pickup[pickupCount + 1];
+	System.arraycopy(pickups, 0, newPickups, 0, pickupCount);
+	newPickups[pickupCount] = newPickup;
+	pickups = newPickups;
+	publishPickups();
+	return newPickup;
+    }
+	
+    double bestLocationForANewPickup() {
+	int pickupCount = pickups.length;
+	if (0 == pickupCount) {
+	    // First pickup?  At the end of the neck.
+	    return fretPosition(fretCount) - 1.0;
+	} 
+	// Where's the rightmost pickup?
+	int rightMost = 0;
+	double minX = fretPosition(fretCount) - 1.0;
+	for (int i = 0; i < pickupCount; i++) {
+	    Pickup p = getPickup(i);
+	    double rightSide = p.position - 0.5 * p.width;
+	    if (rightSide < minX) {
+		minX = rightSide;
+		rightMost = i;
+	    }
+	}
+	return (1.5 < minX) ? (minX - 1.0) : 1.0;
+    }
+	    
+
+    void removePickup(Pickup pickup) {
+	int pickupCount = pickups.length;
+	int i = 0;
+	while ((i < pickupCount) && (pickups[i] != pickup)) {
+	    i++;
+	}
+	if (i < pickupCount) {
+	    Pickup newPickups[] = new Pickup[pickupCount - 1];
+	    System.arraycopy(pickups, 0, newPickups, 0, i);
+	    System.arraycopy(pickups, i + 1, newPickups, i, pickupCount - i - 1);
+	    pickups = newPickups;
+	    // renumber
+	    while (i < pickups.length) {
+		pickup = getPickup(i);
+		pickup.number = ++i;
+		pickup.updateControlPanel();
+	    }
+	    publishPickups();
+	}
+    }
+
+    /**
+     * Return the number of the pickup at this location.
+     * or -1 if none found
+     */
+    int pickupAt(double xFromBridge) {
+	return bank.pickupAt(xFromBridge);
+    }
+
+    /**
+     * Compute the response of all the pickups at this point.
+     */
+    double responseAt(double freq) {
+	double radRelFreq =  freq * Math.PI / (scaleLength * stringOpenFreq);
+	return responseAt(bank, radRelFreq);
+    }
+
+    /**
+     * Response of the pickups in bank b at this radian relative frequency.
+     */
+    double responseAt(PickupBank b, double radRelFreq) {
+	int pickupCount = b.count;
+	double a = 0.0;
+	if (fastMath) {
+	    for (int i = 0; i < pickupCount; i++) {
+		a += b.responseAtFast(i, radRelFreq);
+	    }
+	} else {
+	    for (int i = 0; i < pickupCount; i++) {
+		a += b.responseAt(i, radRelFreq);
+	    }
+	}
+	return a;
+    }
+
+    /**
+     * Compute the response of all the pickups at count frequencies
+     * in one pass, leaving the results in amps.  Gives exactly the 
+     * same values as calling responseAt(freq) for each frequency, but
+     * walks the pickups once instead of once per frequency.
+     */
+    void responseAt(double freqs[], double amps[], int count) {
+	if ((null == radRelFreqs) || (radRelFreqs.length < count)) {
+	    radRelFreqs = new double[count];
+	}
+	double lf = scaleLength * stringOpenFreq;
+	for (int j = 0; j < count; j++) {
+	    radRelFreqs[j] = freqs[j] * Math.PI / lf;
+	    amps[j] = 0.0;
+	}
+	PickupBank b = bank;
+	int pickupCount = b.count;
+	for (int i = 0; i < pickupCount; i++) {
+	    if (fastMath) {
+		b.addResponseFast(i, radRelFreqs, amps, count);
+	    } else {
+		b.addResponse(i, radRelFreqs, amps, count);
+	    }
+	}
+    }
+
+    /**
+     * The complex response of all the pickups at count frequencies, with
+     * its phase and group delay, into c (or a new one if c is null).
+     * Each pickup's term and its slope come out of the same pass, from
+     * one tangent per angle, so this costs about what responseAt does.
+     *
+     * An ideal string's modes are standing waves, so each pickup's term
+     * is real and the phase is 0 or 180 degrees.  It's the load on a
+     * pickup's coil (PickupBank.loadAt) that turns the phase and delays
+     * the sound around the resonance.
+     */
+    ComplexResponse complexResponse(double freqs[], int count, ComplexResponse c) {
+	return complexResponse(bank, freqs, count, c);
+    }
+
+    /**
+     * Same, for the pickups in bank b.
+     */
+    ComplexResponse complexResponse(PickupBank b, double freqs[], int count, ComplexResponse c) {
+	if (null == c) {
+	    c = new ComplexResponse();
+	}
+	c.setSize(count);
+	if ((null == radRelFreqs) || (radRelFreqs.length < count)) {
+	    radRelFreqs = new double[count];
+	}
+	double lf = scaleLength * stringOpenFreq;
+	for (int j = 0; j < count; j++) {
+	    radRelFreqs[j] = freqs[j] * Math.PI / lf;
+	    c.re[j] = c.im[j] = c.slopeRe[j] = c.slopeIm[j] = 0.0;
+	}
+	if (b.loaded) {
+	    newTerms(count, lf);
+	}
+	int loadFrom = -1;	// the pickup whose load is in termLoad
+	for (int i = 0; i < b.count; i++) {
+	    if (b.idealLoad(i)) {
+		if (fastMath) {
+		    b.addResponseAndSlopeFast(i, radRelFreqs, c.re, c.slopeRe, count);
+		} else {
+		    b.addResponseAndSlope(i, radRelFreqs, c.re, c.slopeRe, count);
+		}
+		continue;
+	    }
+	    for (int j = 0; j < count; j++) {
+		termRe[j] = termSlope[j] = 0.0;
+	    }
+	    if (fastMath) {
+		b.addResponseAndSlopeFast(i, radRelFreqs, termRe, termSlope, count);
+	    } else {
+		b.addResponseAndSlope(i, radRelFreqs, termRe, termSlope, count);
+	    }
+	    if ((loadFrom < 0) || !b.sameLoad(i, b, loadFrom)) {
+		b.loadAt(i, termOmegas, termLoadRe, termLoadIm, 
+			 termLoadSlopeRe, termLoadSlopeIm, count);
+		loadFrom = i;
+	    }
+	    // (term load)' = term' load + term load', with d(omega)/dw = 2 L f0
+	    double dOmega = 2.0 * lf;
+	    for (int j = 0; j < count; j++) {
+		double t = termRe[j];
+		double s = termSlope[j];
+		c.re[j] += t * termLoadRe[j];
+		c.im[j] += t * termLoadIm[j];
+		c.slopeRe[j] += s * termLoadRe[j] + t * dOmega * termLoadSlopeRe[j];
+		c.slopeIm[j] += s * termLoadIm[j] + t * dOmega * termLoadSlopeIm[j];
+	    }
+	}
+	// radian relative frequency is omega over the wave speed, 2 L f0
+	c.finish(count, 1.0 / (2.0 * lf));
+	return c;
+    }
+
+    /**
+     * Set up the scratch for a loaded complexResponse at radRelFreqs.
+     */
+    void newTerms(int count, double lf) {
+	if ((null == termRe) || (termRe.length < count)) {
+	    termRe = new double[count];
+	    termSlope = new double[count];
+	    termLoadRe = new double[count];
+	    termLoadIm = new double[count];
+	    termLoadSlopeRe = new double[count];
+	    termLoadSlopeIm = new double[count];
+	    termOmegas = new double[count];
+	}
+	for (int j = 0; j < count; j++) {
+	    termOmegas[j] = 2.0 * lf * radRelFreqs[j];
+	}
+    }
+
+    /**
+     * Return the response of all the pickups at count log spaced 
+     * frequencies from fMin to fMax.  The frequencies are left in 
+     * curveFreqs.  The returned array belongs to the model and is only
+     * good until the next call.
+     *
+     * Only pickups that have changed since the last call are recomputed;
+     * their old contribution is subtracted from the total and the new one
+     * added.  A new grid, scale length, open string frequency or math
+     * mode recomputes everything.
+     *
+     * If any pickup is loaded, this is the magnitude of the response,
+     * never negative.  A loaded pickup's contribution is worked out and
+     * multiplied by its load in the same pass, and the load on the grid
+     * is shared with every other pickup that drives the same one.
+     */
+    double[] responseCurve(double fMin, double fMax, int count) {
+	useCurveGrid(fMin, fMax, count);
+	PickupBank b = bank;
+	if (b == curveBank) {
+	    return b.loaded ? curveMagnitude : curve;
+	}
+	PickupBank old = curveBank;
+	double oldContributions[][] = curveContributions;
+	double contributions[][] = new double[b.count][];
+	for (int i = 0; i < b.count; i++) {
+	    int k = old.indexOf(b.id[i]);
+	    double contribution[] = (0 <= k) ? oldContributions[k] : null;
+	    if (0 <= k) {
+		oldContributions[k] = null;
+		if (old.sameParameters(k, b, i)) {
+		    contributions[i] = contribution;
+		    continue;
+		}
+		removeContribution(old, k, contribution);
+	    } else {
+		contribution = new double[count];
+	    }
+	    if (b.idealLoad(i)) {
+		for (int j = 0; j < count; j++) {
+		    contribution[j] = 0.0;
+		}
+		if (fastMath) {
+		    b.addResponseFast(i, curveRadRelFreqs, contribution, count);
+		} else {
+		    b.addResponse(i, curveRadRelFreqs, contribution, count);
+		}
+		for (int j = 0; j < count; j++) {
+		    curve[j] += contribution[j];
+		}
+	    } else {
+		LoadCurve load = loadCurve(b, i);
+		if (fastMath) {
+		    b.addLoadedResponseFast(i, curveRadRelFreqs, load.re, load.im, 
+					    contribution, curve, curveIm, count);
+		} else {
+		    b.addLoadedResponse(i, curveRadRelFreqs, load.re, load.im, 
+					contribution, curve, curveIm, count);
+		}
+	    }
+	    contributions[i] = contribution;
+	}
+	// anything left over belongs to pickups that have been removed
+	for (int k = 0; k < old.count; k++) {
+	    double contribution[] = oldContributions[k];
+	    if (null != contribution) {
+		removeContribution(old, k, contribution);
+	    }
+	}
+	curveBank = b;
+	curveContributions = contributions;
+	if (!b.loaded) {
+	    return curve;
+	}
+	for (int j = 0; j < count; j++) {
+	    curveMagnitude[j] = Math.sqrt(curve[j] * curve[j] + curveIm[j] * curveIm[j]);
+	}
+	return curveMagnitude;
+    }
+
+    /**
+     * Take pickup k of bank b's contribution back out of the curve.
+     */
+    void removeContribution(PickupBank b, int k, double contribution[]) {
+	int count = curveCount;
+	if (b.idealLoad(k)) {
+	    for (int j = 0; j < count; j++) {
+		curve[j] -= contribution[j];
+	    }
+	} else {
+	    LoadCurve load = loadCurve(b, k);
+	    for (int j = 0; j < count; j++) {
+		curve[j] -= contribution[j] * load.re[j];
+		curveIm[j] -= contribution[j] * load.im[j];
+	    }
+	}
+    }
+
+    /**
+     * A load on the curve grid, and the most it passes.
+     */
+    static class LoadCurve {
+	PickupBank bank;	// the load is pickup index's in bank
+	int index;
+	double re[];
+	double im[];
+	double peak;
+    }
+
+    /**
+     * The load on pickup i of bank b at each point of the curve grid,
+     * worked out the first time a pickup with that load shows up.
+     */
+    LoadCurve loadCurve(PickupBank b, int i) {
+	LoadCurve load = null;
+	GuitarModel m = loadsFrom;
+	if ((null != m) && (m.curveCount == curveCount) && 
+	    (m.curveFMin == curveFMin) && (m.curveFMax == curveFMax)) {
+	    load = m.findLoadCurve(b, i);
+	}
+	if (null == load) {
+	    load = findLoadCurve(b, i);
+	}
+	if (null != load) {
+	    return load;
+	}
+	load = new LoadCurve();
+	load.bank = b;
+	load.index = i;
+	load.re = new double[curveCount];
+	load.im = new double[curveCount];
+	b.loadAt(i, curveOmegas, load.re, load.im, null, null, curveCount);
+	for (int j = 0; j < curveCount; j++) {
+	    load.peak = Math.max(load.peak, 
+				 Math.sqrt(load.re[j] * load.re[j] + load.im[j] * load.im[j]));
+	}
+	if (MAX_LOAD_CURVES <= loadCurves.size()) {
+	    loadCurves.removeElementAt(0);
+	}
+	loadCurves.addElement(load);
+	return load;
+    }
+
+    /**
+     * The load on the curve grid that pickup i of bank b drives, if it's
+     * been worked out, else null.  Safe to call from another thread.
+     */
+    LoadCurve findLoadCurve(PickupBank b, int i) {
+	synchronized (loadCurves) {
+	    int n = loadCurves.size();
+	    for (int k = 0; k < n; k++) {
+		LoadCurve load = loadCurves.elementAt(k);
+		if (load.bank.sameLoad(load.index, b, i)) {
+		    return load;
+		}
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Like responseCurve, but also fills envelopeMin and envelopeMax with
+     * the smallest and largest |response| anywhere within each column, so
+     * comb notches narrower than a column still show up at full depth.
+     * Amplitudes below floor (the bottom of the plot) needn't be exact.
+     *
+     * Each pickup term is band limited to position + width/2 (in radian
+     * relative frequency), which bounds the second derivative of the
+     * whole response by envelopeCurvature.  That in turn bounds how far
+     * the response can stray from a straight line between two samples.
+     * Intervals where it could stray by more than ENVELOPE_TOLERANCE of
+     * the amplitude there are split in half until it can't (or until
+     * ENVELOPE_MAX_DEPTH), and the straight lines between the samples
+     * make the envelope.  Smooth low frequency stretches take no extra
+     * evaluations at all; the splitting goes where the notches are.
+     */
+    double[] responseEnvelope(double fMin, double fMax, int count, double floor) {
+	double a[] = responseCurve(fMin, fMax, count);
+	return envelope(curveBank, a, fMin, fMax, count, floor);
+    }
+
+    /**
+     * Same, and the complex response on the same grid, with its phase
+     * and group delay, into traces.  The curve is taken from traces, so
+     * it's one pass over the pickups instead of two, but a full one:
+     * responseCurve's contributions aren't used or changed.  The array 
+     * returned belongs to the model or to traces, and is only good until
+     * the next call.
+     */
+    double[] responseEnvelope(double fMin, double fMax, int count, double floor,
+			      ComplexResponse traces) {
+	useCurveGrid(fMin, fMax, count);
+	PickupBank b = bank;
+	complexResponse(b, curveFreqs, count, traces);
+	// unloaded, the response is real and keeps its sign, as in curve
+	double a[] = traces.re;
+	if (b.loaded) {
+	    if ((null == traceMagnitude) || (traceMagnitude.length < count)) {
+		traceMagnitude = new double[count];
+	    }
+	    a = traceMagnitude;
+	    for (int j = 0; j < count; j++) {
+		a[j] = traces.magnitude(j);
+	    }
+	}
+	return envelope(b, a, fMin, fMax, count, floor);
+    }
+
+    /**
+     * The envelope around a, bank b's response on the curve grid.
+     */
+    double[] envelope(PickupBank b, double a[], double fMin, double fMax, int count, 
+		      double floor) {
+	if ((null == envelopeMin) || (envelopeMin.length < count)) {
+	    envelopeMin = new double[count];
+	    envelopeMax = new double[count];
+	}
+	for (int j = 0; j < count; j++) {
+	    envelopeMin[j] = envelopeMax[j] = Math.abs(a[j]);
+	}
+	envelopeCurvature = 0.0;
+	for (int i = 0; i < b.count; i++) {
+	    // as in findFeatures, only the sizes matter
+	    double rate = Math.abs(b.position[i]) + 0.5 * Math.abs(b.width[i]);
+	    // a load changes slowly next to the string's terms, so just its peak
+	    double peak = b.idealLoad(i) ? 1.0 : loadCurve(b, i).peak;
+	    envelopeCurvature += peak * b.level[i] * rate * rate;
+	}
+	envelopeFloor = floor;
+	envelopeEvaluations = count;
+	envelopeLogStep = Math.log(fMax / fMin) / (count - 1);
+	for (int j = 0; j + 1 < count; j++) {
+	    refine(b, curveRadRelFreqs[j], a[j], curveRadRelFreqs[j + 1], a[j + 1], 0);
+	}
+	return a;
+    }
+
+    /**
+     * Fill in the envelope between radian relative frequencies w0 and w1,
+     * where the response is a0 and a1.
+     */
+    void refine(PickupBank b, double w0, double a0, double w1, double a1, int depth) {
+	double dw = w1 - w0;
+	double stray = 0.125 * dw * dw * envelopeCurvature;
+	boolean crossing = (a0 < 0.0) != (a1 < 0.0);
+	double abs0 = Math.abs(a0);
+	double abs1 = Math.abs(a1);
+	double scale = crossing ? Math.max(abs0, abs1) : Math.max(Math.min(abs0, abs1), envelopeFloor);
+	if ((stray <= ENVELOPE_TOLERANCE * scale) || (ENVELOPE_MAX_DEPTH <= depth)) {
+	    if (crossing) {
+		// a notch; it goes all the way down
+		envelopeMin[envelopeColumn(w0 + dw * a0 / (a0 - a1))] = 0.0;
+	    }
+	    int c0 = envelopeColumn(w0);
+	    if (c0 != envelopeColumn(w1)) {
+		// the line crosses into the next column; both get the value there
+		double wb = curveRadRelFreqs[0] * Math.exp((c0 + 0.5) * envelopeLogStep);
+		double ab = Math.abs(a0 + (a1 - a0) * (wb - w0) / dw);
+		addToEnvelope(c0, ab);
+		addToEnvelope(c0 + 1, ab);
+	    }
+	    return;
+	}
+	double wm = 0.5 * (w0 + w1);
+	double am = b.loaded ? loadedResponseAt(b, wm) : responseAt(b, wm);
+	envelopeEvaluations++;
+	addToEnvelope(envelopeColumn(wm), Math.abs(am));
+	refine(b, w0, a0, wm, am, depth + 1);
+	refine(b, wm, am, w1, a1, depth + 1);
+    }
+
+    /**
+     * The magnitude of the response of the pickups in bank b, with their
+     * loads, at this radian relative frequency.
+     */
+    double loadedResponseAt(PickupBank b, double radRelFreq) {
+	double omega = 2.0 * scaleLength * stringOpenFreq * radRelFreq;
+	double re = 0.0;
+	double im = 0.0;
+	for (int i = 0; i < b.count; i++) {
+	    double a = fastMath ? b.responseAtFast(i, radRelFreq) : b.responseAt(i, radRelFreq);
+	    if (b.idealLoad(i)) {
+		re += a;
+		continue;
+	    }
+	    // as PickupBank.loadAt
+	    double dRe = 1.0 + b.resistance[i] * b.conductance[i] - 
+		omega * omega * b.inductance[i] * b.capacitance[i];
+	    double dIm = omega * (b.inductance[i] * b.conductance[i] + 
+				  b.resistance[i] * b.capacitance[i]);
+	    double scale = a / (dRe * dRe + dIm * dIm);
+	    re += scale * dRe;
+	    im -= scale * dIm;
+	}
+	return Math.sqrt(re * re + im * im);
+    }
+
+    void addToEnvelope(int c, double abs) {
+	if (abs < envelopeMin[c]) {
+	    envelopeMin[c] = abs;
+	}
+	if (envelopeMax[c] < abs) {
+	    envelopeMax[c] = abs;
+	}
+    }
+
+    /**
+     * The curve column nearest radian relative frequency w.
+     */
+    int envelopeColumn(double w) {
+	int c = (int) Math.round(Math.log(w / curveRadRelFreqs[0]) / envelopeLogStep);
+	return Math.max(0, Math.min(curveCount - 1, c));
+    }
+
+    /**
+     * Find the notches and peaks of |response| from fMin to fMax and leave
+     * them in features, in order of frequency.  Always uses exact math.
+     *
+     * One pickup's nulls are known outright: sin(position w) = 0 and the
+     * zeros of the width's sinc.  Between each pair there's one peak, found
+     * as the root of the slope.  For several pickups the response and its
+     * slope are stepped through at half the fastest term's half cycle, 
+     * and every sign change of either is refined to a notch (a true null),
+     * or a peak or shallow notch (an extremum).  A step where neither 
+     * changes sign is split only if the derivative bounds leave room for
+     * a pair of roots hiding inside it.  Either way it's a few thousand
+     * evaluations, not a dense sweep.
+     *
+     * Loads don't move these; with them the features are still the 
+     * string's, but the amplitudes are the loaded response's.
+     */
+    ResponseFeatures findFeatures(double fMin, double fMax, ResponseFeatures features) {
+	features.clear();
+	PickupBank b = bank;
+	double lf = scaleLength * stringOpenFreq;
+	double w0 = fMin * Math.PI / lf;
+	double w1 = fMax * Math.PI / lf;
+	double rate = 0.0;
+	for (int n = 0; n < featureBound.length; n++) {
+	    featureBound[n] = 0.0;
+	}
+	for (int i = 0; i < b.count; i++) {
+	    // sin and the sinc are odd and even, so only their sizes matter
+	    double r = Math.abs(b.position[i]) + 0.5 * Math.abs(b.width[i]);
+	    rate = Math.max(rate, r);
+	    double bound = b.level[i];
+	    for (int n = 0; n < featureBound.length; n++) {
+		featureBound[n] += bound;
+		bound *= r;
+	    }
+	}
+	if ((0.0 >= rate) || (w1 <= w0)) {
+	    return features;
+	}
+	if (1 == b.count) {
+	    findFeaturesOfOne(b, w0, w1, lf, features);
+	    return features;
+	}
+	double halfCycles = (w1 - w0) * rate / Math.PI;
+	if (FEATURE_MAX_NULLS < halfCycles) {
+	    w1 = w0 + FEATURE_MAX_NULLS * Math.PI / rate;
+	    halfCycles = FEATURE_MAX_NULLS;
+	}
+	int steps = (int) Math.ceil(halfCycles * FEATURE_STEPS);
+	double wa = w0;
+	double a = featureAt(b, wa, false);
+	double s = featureAt(b, wa, true);
+	for (int k = 1; k <= steps; k++) {
+	    double wb = (k == steps) ? w1 : w0 + (w1 - w0) * k / steps;
+	    double ab = featureAt(b, wb, false);
+	    double sb = featureAt(b, wb, true);
+	    findFeatures(b, wa, a, s, wb, ab, sb, 0, lf, features);
+	    wa = wb;
+	    a = ab;
+	    s = sb;
+	}
+	return features;
+    }
+
+    /**
+     * Find the features between w0 and w1, given the response and slope
+     * at each end.
+     */
+    void findFeatures(PickupBank b, double w0, double a0, double s0, 
+		      double w1, double a1, double s1, int depth, double lf,
+		      ResponseFeatures features) {
+	double dw = w1 - w0;
+	boolean zero = (a0 < 0.0) != (a1 < 0.0);
+	boolean extremum = (s0 < 0.0) != (s1 < 0.0);
+	// could the response (or slope) get from both ends to zero and back?
+	boolean hiddenZeros = !zero && mightCross(a0, a1, dw, 1);
+	boolean hiddenExtrema = !extremum && mightCross(s0, s1, dw, 2);
+	if ((hiddenZeros || hiddenExtrema) && (depth < FEATURE_MAX_DEPTH)) {
+	    double wm = 0.5 * (w0 + w1);
+	    double am = featureAt(b, wm, false);
+	    double sm = featureAt(b, wm, true);
+	    findFeatures(b, w0, a0, s0, wm, am, sm, depth + 1, lf, features);
+	    findFeatures(b, wm, am, sm, w1, a1, s1, depth + 1, lf, features);
+	    return;
+	}
+	double wz = zero ? root(b, w0, a0, w1, a1, false) : -1.0;
+	double wx = extremum ? root(b, w0, s0, w1, s1, true) : -1.0;
+	if ((0.0 <= wx) && (wx < wz)) {
+	    addExtremum(b, wx, s0, lf, features);
+	    wx = -1.0;
+	}
+	if (0.0 <= wz) {
+	    features.add(wz * lf / Math.PI, 0.0, true);
+	}
+	if (0.0 <= wx) {
+	    addExtremum(b, wx, s0, lf, features);
+	}
+    }
+
+    /**
+     * findFeatures for a single pickup, from its analytic nulls.  A
+     * pickup past the bridge has the same nulls as its mirror image, since
+     * sin is odd: only the sign of the response flips.
+     */
+    void findFeaturesOfOne(PickupBank b, double w0, double w1, double lf,
+			   ResponseFeatures features) {
+	double p = Math.abs(b.position[0]);
+	double h = 0.5 * Math.abs(b.width[0]);
+	if (0.0 == p) {
+	    // on the bridge: silent everywhere
+	    return;
+	}
+	// the k'th null of each factor, merged in order
+	int kp = (int) Math.floor(w0 * p / Math.PI) + 1;
+	int kh = (0.0 < h) ? (int) Math.floor(w0 * h / Math.PI) + 1 : 0;
+	double prev = w0;
+	for (int n = 0; n < FEATURE_MAX_NULLS; n++) {
+	    double zp = kp * Math.PI / p;
+	    double zh = (0.0 < h) ? kh * Math.PI / h : Double.MAX_VALUE;
+	    double z = Math.min(zp, zh);
+	    if (w1 < z) {
+		findPeak(b, prev, w1, lf, features);
+		return;
+	    }
+	    findPeak(b, prev, z, lf, features);
+	    features.add(z * lf / Math.PI, 0.0, true);
+	    // a null of both at once is still just one notch
+	    if (zp - z <= FEATURE_TOLERANCE * z) {
+		kp++;
+	    }
+	    if (zh - z <= FEATURE_TOLERANCE * z) {
+		kh++;
+	    }
+	    prev = z;
+	}
+    }
+
+    /**
+     * Add the peak between w0 and w1, if the slope says there is one.
+     * The ends are nudged inward so a null at either one doesn't confuse
+     * the slope's sign.
+     */
+    void findPeak(PickupBank b, double w0, double w1, double lf, ResponseFeatures features) {
+	double nudge = 1.0e-9 * (w1 - w0);
+	double s0 = featureAt(b, w0 + nudge, true);
+	double s1 = featureAt(b, w1 - nudge, true);
+	if ((s0 < 0.0) != (s1 < 0.0)) {
+	    addExtremum(b, root(b, w0 + nudge, s0, w1 - nudge, s1, true), s0, lf, features);
+	}
+    }
+
+    /**
+     * Could a function with values v0 and v1 (of the same sign) dw apart,
+     * whose next two derivatives are bounded by featureBound[n] and 
+     * featureBound[n + 1], get to zero in between?  Either bound alone
+     * can rule it out.
+     */
+    boolean mightCross(double v0, double v1, double dw, int n) {
+	v0 = Math.abs(v0);
+	v1 = Math.abs(v1);
+	return (v0 + v1 <= featureBound[n] * dw) && 
+	    (Math.min(v0, v1) <= 0.125 * featureBound[n + 1] * dw * dw);
+    }
+
+    /**
+     * Add the extremum of the response at w, where the slope just before
+     * was s0.  It's a peak of |response| if the response is heading away
+     * from zero, otherwise a shallow notch.
+     */
+    void addExtremum(PickupBank b, double w, double s0, double lf, ResponseFeatures features) {
+	double a = featureAt(b, w, false);
+	double amp = b.loaded ? loadedResponseAt(b, w) : Math.abs(a);
+	features.add(w * lf / Math.PI, amp, (0.0 < a) != (0.0 < s0));
+    }
+
+    /**
+     * The exact response of bank b at w, or its slope d/dw.
+     */
+    double featureAt(PickupBank b, double w, boolean slope) {
+	double a = 0.0;
+	for (int i = 0; i < b.count; i++) {
+	    a += slope ? b.slopeAt(i, w) : b.responseAt(i, w);
+	}
+	return a;
+    }
+
+    /**
+     * The root of the response (or its slope) between w0 and w1, where 
+     * it has opposite signs v0 and v1.  Regula falsi, halving the stale 
+     * end's value whenever one end sticks (the Illinois method).
+     */
+    double root(PickupBank b, double w0, double v0, double w1, double v1, boolean slope) {
+	int side = 0;
+	for (int n = 0; n < FEATURE_MAX_ITERATIONS; n++) {
+	    double w = (w0 * v1 - w1 * v0) / (v1 - v0);
+	    if (w1 - w0 <= FEATURE_TOLERANCE * w1) {
+		return w;
+	    }
+	    double v = featureAt(b, w, slope);
+	    if (0.0 == v) {
+		return w;
+	    }
+	    if ((v < 0.0) == (v0 < 0.0)) {
+		w0 = w;
+		v0 = v;
+		if (-1 == side) {
+		    v1 *= 0.5;
+		}
+		side = -1;
+	    } else {
+		w1 = w;
+		v1 = v;
+		if (+1 == side) {
+		    v0 *= 0.5;
+		}
+		side = +1;
+	    }
+	}
+	return (w0 * v1 - w1 * v0) / (v1 - v0);
+    }
+
+    /**
+     * The response of each string (or just the one, without a string 
+     * set) at count log spaced frequencies from fMin to fMax, as 
+     * responseCurve gives it.  The frequencies are left in stringFreqs.
+     * The arrays belong to the model or the cache, and are only good 
+     * until the next call.
+     */
+    double[][] stringCurves(double fMin, double fMax, int count) {
+	return stringCurves(fMin, fMax, count, null, false);
+    }
+
+    /**
+     * Same, with each string's curve from cache when it can be, and a new
+     * one stored there if keep is true.  cache may be null.
+     */
+    double[][] stringCurves(double fMin, double fMax, int count, CurveCache cache, boolean keep) {
+	return stringCurves(fMin, fMax, count, cache, keep, WorkerGang.shared);
+    }
+
+    /**
+     * Same, with the strings spread over gang.  A caller with concurrency
+     * of its own, such as PickupServer, passes WorkerGang.caller, since
+     * the shared gang runs one loop at a time.
+     *
+     * Every string has a model of its own, so each keeps its own pickup
+     * contributions: moving one pickup recomputes just that pickup, once
+     * per string, and the strings are spread over the gang.  A
+     * string's position and width terms go by its own radian relative 
+     * frequency, pi f / (scale length * open frequency), so they can't be
+     * shared between strings; the loads only go by f, and are worked out
+     * once, in the first string's model, for all of them.
+     */
+    double[][] stringCurves(final double fMin, final double fMax, final int count,
+			    final CurveCache cache, final boolean keep, WorkerGang gang) {
+	StringSet s = strings;
+	int stringCount = (null == s) ? 1 : s.count;
+	if (stringModels.length != stringCount) {
+	    stringModels = new GuitarModel[stringCount];
+	    stringCurves = new double[stringCount][];
+	    for (int k = 0; k < stringCount; k++) {
+		stringModels[k] = new GuitarModel();
+		stringModels[k].loadsFrom = (0 == k) ? null : stringModels[0];
+	    }
+	    stringBanksFrom = null;
+	}
+	PickupBank b = bank;
+	boolean newBanks = (b != stringBanksFrom) || (s != stringBanksFor);
+	for (int k = 0; k < stringCount; k++) {
+	    GuitarModel m = stringModels[k];
+	    m.stringOpenFreq = (null == s) ? stringOpenFreq : s.openFreq[k];
+	    m.scaleLength = scaleLength;
+	    m.fastMath = fastMath;
+	    if (newBanks) {
+		m.bank = (null == s) ? b : b.shifted(s.offset[k]);
+	    }
+	}
+	stringBanksFrom = b;
+	stringBanksFor = s;
+	final GuitarModel models[] = stringModels;
+	final double curves[][] = stringCurves;
+	if (b.loaded && (1 < stringCount)) {
+	    GuitarModel first = models[0];
+	    first.useCurveGrid(fMin, fMax, count);
+	    for (int i = 0; i < first.bank.count; i++) {
+		if (!first.bank.idealLoad(i)) {
+		    first.loadCurve(first.bank, i);
+		}
+	    }
+	}
+	final double freqs[][] = new double[1][];
+	gang.run(new WorkerGang.Loop() {
+	    void run(int k) {
+		if (null == cache) {
+		    curves[k] = models[k].responseCurve(fMin, fMax, count);
+		    if (0 == k) {
+			freqs[0] = models[0].curveFreqs;
+		    }
+		} else {
+		    CurveCache.Entry e = cache.responseCurve(models[k], fMin, fMax, count, keep);
+		    curves[k] = e.amps;
+		    if (0 == k) {
+			freqs[0] = e.freqs;
+		    }
+		}
+	    }
+	}, stringCount);
+	stringFreqs = freqs[0];
+	return curves;
+    }
+
+    /**
+     * The RMS of the first stringCount curves at each point, what the 
+     * strings give together when they're all sounding.  The array 
+     * belongs to the model and is only good until the next call.
+     */
+    double[] stringAverage(double curves[][], int stringCount, int count) {
+	if ((null == stringAverage) || (stringAverage.length < count)) {
+	    stringAverage = new double[count];
+	}
+	double a[] = stringAverage;
+	for (int j = 0; j < count; j++) {
+	    a[j] = 0.0;
+	}
+	for (int k = 0; k < stringCount; k++) {
+	    double c[] = curves[k];
+	    for (int j = 0; j < count; j++) {
+		a[j] += c[j] * c[j];
+	    }
+	}
+	double scale = 1.0 / stringCount;
+	for (int j = 0; j < count; j++) {
+	    a[j] = Math.sqrt(a[j] * scale);
+	}
+	return a;
+    }
+
+    /**
+     * Make the curve grid count points from fMin to fMax, for our scale
+     * length, open string frequency and math mode.  If it isn't already,
+     * it's set up fresh, as newCurveGrid does.
+     */
+    void useCurveGrid(double fMin, double fMax, int count) {
+	if ((null == curve) || (count != curveCount) || 
+	    (fMin != curveFMin) || (fMax != curveFMax) ||
+	    (scaleLength != curveScaleLength) || 
+	    (stringOpenFreq != curveStringOpenFreq) ||
+	    (fastMath != curveFastMath)) {
+	    newCurveGrid(fMin, fMax, count);
+	}
+    }
+
+    /**
+     * Set up a fresh curve grid and drop every pickup's contribution.
+     */
+    void newCurveGrid(double fMin, double fMax, int count) {
+	if ((null == curve) || (curve.length < count)) {
+	    curveFreqs = new double[count];
+	    curveRadRelFreqs = new double[count];
+	    curve = new double[count];
+	    curveOmegas = new double[count];
+	    curveIm = new double[count];
+	    curveMagnitude = new double[count];
+	}
+	curveCount = count;
+	curveFMin = fMin;
+	curveFMax = fMax;
+	curveScaleLength = scaleLength;
+	curveStringOpenFreq = stringOpenFreq;
+	curveFastMath = fastMath;
+	curveBank = PickupBank.EMPTY;
+	curveContributions = new double[0][];
+	loadCurves.removeAllElements();
+	double lf = scaleLength * stringOpenFreq;
+	double freq = fMin;
+	double r = Math.exp(Math.log(fMax / fMin) / (count - 1));
+	for (int j = 0; j < count; j++) {
+	    curveFreqs[j] = freq;
+	    curveRadRelFreqs[j] = freq * Math.PI / lf;
+	    curveOmegas[j] = 2.0 * Math.PI * freq;
+	    curve[j] = curveIm[j] = 0.0;
+	    freq *= r;
+	}
+    }
+	
+    /**
+     * Returns the distance from the bridge to this fret.
+     */
+    double fretPosition(int fret) {
+	return scaleLength * Math.pow(0.5, (double) fret / 12.0);
+    }
+
+    double fretFreq() {
+	return stringOpenFreq * Math.pow(2.0, (((double) playedFret) / 12.0));
+    }
+}
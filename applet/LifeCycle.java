@@ -1,24 +1,69 @@
 import java.applet.Applet;
 import java.awt.Graphics;
+import java.io.*;
+import com.till.trace.LifecycleTrace;
 public class LifeCycle extends Applet{
-StringBuffer buffer;
+static int CAPACITY = 256; //ϴ ֱ ̺Ʈ 
+static int LINE_HEIGHT = 15;
+EventLog log;
+EventLogEntry shown[] = new EventLogEntry[0];
+LifecycleTrace trace = new LifecycleTrace("LifeCycle");
 public void init(){
-buffer = new StringBuffer();
+trace.begin(LifecycleTrace.INIT);
+//log ĶͰ   Ͽ,  System.out 
+PrintStream out = System.out;
+String name = getParameter("log");
+Exception failure = null;
+if (null != name) {
+try {
+out = new PrintStream(new FileOutputStream(name, true));
+} catch (IOException e) {
+failure = e;
+} catch (SecurityException e) {
+failure = e;
+}
+}
+log = new EventLog(CAPACITY, out);
+//  System.out ,   
+if (null != failure)
+log.add("can't open " + name + ": " + failure);
 additem("ø ʱȭ Ǿϴ.");
+endPhase(LifecycleTrace.INIT);
 }
 public void start()
-{additem("ø ϰֽϴ");}
+{trace.begin(LifecycleTrace.START);
+additem("ø ϰֽϴ");
+endPhase(LifecycleTrace.START);}
 public void stop()
-{additem("ø Űֽϴ...");}
+{trace.begin(LifecycleTrace.STOP);
+additem("ø Űֽϴ...");
+endPhase(LifecycleTrace.STOP);}
 public void destroy()
-{additem("ε Ǿ  ҽ Դϴ..");}
+{trace.begin(LifecycleTrace.DESTROY);
+additem("ε Ǿ  ҽ Դϴ..");
+endPhase(LifecycleTrace.DESTROY);
+log.close();}
+//ܰ踦 ġ,  ̸ ɸ ð 
+void endPhase(int phase){
+trace.end(phase);
+if (LifecycleTrace.isEnabled())
+additem(trace.describe(phase));
+}
+//ϸ ϰ,  log writer 尡 Ѵ
 void additem(String Status){
-buffer.append(Status);
-System.out.println(Status);
+log.add(Status);
 repaint();
 }
+// ŭ ֱ ̺Ʈ ׸
 public void paint(Graphics g){
+trace.begin(LifecycleTrace.FIRST_FRAME);
 g.drawRect(0,0, getSize().width -1, getSize().height -1);
-g.drawString(buffer.toString(),5, 15);
+int lines = Math.max(1, (getSize().height - 5) / LINE_HEIGHT);
+if (shown.length != lines)
+shown = new EventLogEntry[lines];
+int n = log.latest(shown);
+for (int i = 0; i < n; i++)
+g.drawString((shown[i].time - log.start) / 1000.0 + "s  " + shown[i].message, 5, LINE_HEIGHT * (i + 1));
+trace.end(LifecycleTrace.FIRST_FRAME);
 }
 } 
\ No newline at end of file
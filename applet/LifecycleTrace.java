@@ -0,0 +1,174 @@
+/**
+ * Times an applet's lifecycle: init, start, stop, destroy, and the
+ * first frame it paints.  For each phase it records the wall time, the
+ * CPU time and the bytes allocated by the thread that ran it, read from
+ * the ThreadMXBean, and when destroy ends it prints a summary of the run
+ * to stderr.  Any applet can opt in, from any package:
+ *
+ *   LifecycleTrace trace = new LifecycleTrace("Calculator");
+ *
+ *   public void start() {
+ *	trace.begin(LifecycleTrace.START);
+ *	...
+ *	trace.end(LifecycleTrace.START);
+ *   }
+ *
+ * Only the first end of FIRST_FRAME counts; the time to the first frame
+ * is from the first begin of INIT to then.  Tracing is off, and begin and
+ * end return at once, unless the lifecycle.trace system property is
+ * true.
+ *
+ * This class uses nothing but the JDK, so an applet that is traced only
+ * needs this class beside it.
+ */
+
+package com.till.trace;
+
+import java.lang.management.*;
+
+public class LifecycleTrace {
+    public static int INIT = 0;
+    public static int START = 1;
+    public static int FIRST_FRAME = 2;
+    public static int STOP = 3;
+    public static int DESTROY = 4;
+    static String PHASE_NAMES[] = {"init", "start", "first frame", "stop", "destroy"};
+
+    static boolean enabled = false;
+    static ThreadMXBean threads;
+    static com.sun.management.ThreadMXBean allocs;
+
+    static {
+	try {
+	    enabled = Boolean.getBoolean("lifecycle.trace");
+	    threads = ManagementFactory.getThreadMXBean();
+	    if (threads instanceof com.sun.management.ThreadMXBean) {
+		allocs = (com.sun.management.ThreadMXBean) threads;
+	    }
+	} catch (SecurityException e) {
+	    // in the applet sandbox
+	    enabled = false;
+	} catch (LinkageError e) {
+	    enabled = false;
+	}
+    }
+
+    String name;
+    int runs = 0;			// times init has begun
+    long initWall = 0L;			// System.nanoTime() at the first init
+    long firstFrameWall = -1L;		// from there to the first frame
+    boolean framed = false;
+
+    // per phase: where the open one began, and totals and the last one
+    long beginWall[] = new long[PHASE_NAMES.length];
+    long beginCpu[] = new long[PHASE_NAMES.length];
+    long beginBytes[] = new long[PHASE_NAMES.length];
+    int counts[] = new int[PHASE_NAMES.length];
+    long wall[] = new long[PHASE_NAMES.length];
+    long cpu[] = new long[PHASE_NAMES.length];
+    long bytes[] = new long[PHASE_NAMES.length];
+    long lastWall[] = new long[PHASE_NAMES.length];
+    long lastCpu[] = new long[PHASE_NAMES.length];
+    long lastBytes[] = new long[PHASE_NAMES.length];
+
+    public LifecycleTrace(String name) {
+	this.name = name;
+    }
+
+    public static boolean isEnabled() {
+	return enabled;
+    }
+
+    public synchronized void begin(int phase) {
+	if (!enabled || ((FIRST_FRAME == phase) && framed)) {
+	    return;
+	}
+	if (INIT == phase) {
+	    if (0 == runs++) {
+		initWall = System.nanoTime();
+	    }
+	}
+	beginBytes[phase] = allocatedBytes();
+	beginCpu[phase] = cpuTime();
+	beginWall[phase] = System.nanoTime();
+    }
+
+    public void end(int phase) {
+	if (!enabled) {
+	    return;
+	}
+	synchronized (this) {
+	    long w = System.nanoTime();
+	    long c = cpuTime();
+	    long b = allocatedBytes();
+	    if ((0L == beginWall[phase]) || ((FIRST_FRAME == phase) && framed)) {
+		return;
+	    }
+	    lastWall[phase] = w - beginWall[phase];
+	    lastCpu[phase] = c - beginCpu[phase];
+	    lastBytes[phase] = b - beginBytes[phase];
+	    beginWall[phase] = 0L;
+	    counts[phase]++;
+	    wall[phase] += lastWall[phase];
+	    cpu[phase] += lastCpu[phase];
+	    bytes[phase] += lastBytes[phase];
+	    if (FIRST_FRAME == phase) {
+		framed = true;
+		firstFrameWall = (0L == initWall) ? -1L : w - initWall;
+	    }
+	}
+	if (DESTROY == phase) {
+	    System.err.print(report());
+	}
+    }
+
+    static long cpuTime() {
+	return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0L;
+    }
+
+    static long allocatedBytes() {
+	return (null == allocs) ? 0L : allocs.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * The last time through phase, in a line.
+     */
+    public synchronized String describe(int phase) {
+	return PHASE_NAMES[phase] + ": " + millis(lastWall[phase]) + " ms, cpu " +
+	    millis(lastCpu[phase]) + " ms, " + kilobytes(lastBytes[phase]) + " KB";
+    }
+
+    /**
+     * Every phase so far, and the time to the first frame.
+     */
+    public synchronized String report() {
+	StringBuffer sb = new StringBuffer();
+	sb.append(name + " lifecycle, " + runs + " run" + ((1 == runs) ? "" : "s") + "\n");
+	sb.append(pad("phase", 16) + pad("count", 8) + pad("wall ms", 12) + pad("cpu ms", 12) +
+		  "alloc KB\n");
+	for (int i = 0; i < PHASE_NAMES.length; i++) {
+	    sb.append(pad(PHASE_NAMES[i], 16) + pad("" + counts[i], 8) + pad(millis(wall[i]), 12) +
+		      pad(millis(cpu[i]), 12) + kilobytes(bytes[i]) + "\n");
+	}
+	sb.append("first frame " + ((firstFrameWall < 0L) ? "not painted" :
+				      millis(firstFrameWall) + " ms after init") + "\n");
+	return sb.toString();
+    }
+
+    static String millis(long nanos) {
+	return "" + Math.round(nanos / 10000.0) / 100.0;
+    }
+
+    static String kilobytes(long b) {
+	return "" + Math.round(b / 102.4) / 10.0;
+    }
+
+    // s and at least one space, out to width
+    static String pad(String s, int width) {
+	StringBuffer sb = new StringBuffer(s);
+	do {
+	    sb.append(' ');
+	} while (sb.length() < width);
+	return sb.toString();
+    }
+}
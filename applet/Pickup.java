@@ -0,0 +1,79 @@
+/**
+ * A pickup as the user sees it: its parameters, color and control panel.
+ * The response computations work from the PickupBank that 
+ * GuitarModel.publishPickups builds from these.
+ */
+
+package com.till.pickupplot;
+
+import java.awt.*;
+
+class Pickup {
+    static int nextId = 0;
+    int id;
+    double position = 1.0;
+    double width = 1.0;
+    int polarity = +1;
+    double levelDB = 0.0;
+    double level = 1.0;
+    double height = 0.75;
+    double depth = 0.5;
+    // the coil, and the cable and pots it drives; see PickupBank.loadAt
+    int coil = 0;		// index into COIL_NAMES
+    double inductance = 0.0;	// henries
+    double resistance = 0.0;	// ohms
+    double capacitance = 0.0;	// farads
+    double conductance = 0.0;	// siemens
+    int number = 0;
+    Color color = null;
+    PickupControlPanel controlPanel;
+    PickupSprite sprite;	// how GuitarDisplay last drew it
+	
+    /**
+     * Make a new pickup.
+     * The number is expected to start from 1
+     * A random color is assigned.
+     */
+    public Pickup(int number) {
+	id = newId();
+	this.number = number;
+	// give it a random color
+	color = new Color(128 + (int) (128.0 * Math.random()),
+			  128 + (int) (128.0 * Math.random()),
+			  128 + (int) (128.0 * Math.random()));
+    }
+
+    static synchronized int newId() {
+	return nextId++;
+    }
+
+    // "none" is an ideal pickup, with nothing but the string's response
+    static String COIL_NAMES[] = {"none", "single coil", "humbucker", "P-90"};
+    static double COIL_INDUCTANCE[] = {0.0, 2.5, 4.5, 7.0};
+    static double COIL_RESISTANCE[] = {0.0, 6.0e3, 8.5e3, 8.0e3};
+
+    void setCoil(int newCoil) {
+	coil = newCoil;
+	inductance = COIL_INDUCTANCE[coil];
+	resistance = COIL_RESISTANCE[coil];
+    }
+	
+    void setLevelDB(double newLevelDB) {
+	levelDB = newLevelDB;
+	level = levelOf(levelDB);
+    }
+
+    static double levelOf(double levelDB) {
+	return Math.pow(10.0, levelDB / 20.0);
+    }
+	
+    /**
+     * When you make a change to the pickup call this to tell the 
+     * control panel to reflect the change.
+     */
+    void updateControlPanel() {
+	if (null != controlPanel) {
+	    controlPanel.update();
+	}
+    }
+}
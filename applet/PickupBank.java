@@ -0,0 +1,398 @@
+/**
+ * The physical parameters of a set of pickups, as parallel arrays so the
+ * response loops don't have to go through the Pickup objects.
+ *
+ * Once a bank is published in GuitarModel.bank it is never changed; the
+ * writer publishes a new one instead.  So any thread can read a bank 
+ * without locking and always sees a consistent set of pickups.  A bank 
+ * that never leaves one thread (a sweep or optimizer worker) may be 
+ * changed in place.
+ */
+
+package com.till.pickupplot;
+
+class PickupBank {
+    static PickupBank EMPTY = new PickupBank(0);
+    int count;
+    int id[];			// Pickup.id, to match pickups between banks
+    double position[];
+    double width[];
+    double level[];
+    int polarity[];
+    double inductance[];
+    double resistance[];
+    double capacitance[];
+    double conductance[];
+    boolean loaded;		// some pickup has a coil, see loadAt
+
+    PickupBank(int count) {
+	this.count = count;
+	id = new int[count];
+	position = new double[count];
+	width = new double[count];
+	level = new double[count];
+	polarity = new int[count];
+	inductance = new double[count];
+	resistance = new double[count];
+	capacitance = new double[count];
+	conductance = new double[count];
+	for (int i = 0; i < count; i++) {
+	    id[i] = -1 - i;
+	    width[i] = 1.0;
+	    level[i] = 1.0;
+	    polarity[i] = +1;
+	}
+    }
+
+    PickupBank(Pickup pickups[]) {
+	this(pickups.length);
+	for (int i = 0; i < count; i++) {
+	    Pickup p = pickups[i];
+	    id[i] = p.id;
+	    position[i] = p.position;
+	    width[i] = p.width;
+	    level[i] = p.level;
+	    polarity[i] = p.polarity;
+	    inductance[i] = p.inductance;
+	    resistance[i] = p.resistance;
+	    capacitance[i] = p.capacitance;
+	    conductance[i] = p.conductance;
+	    loaded |= !idealLoad(i);
+	}
+    }
+
+    /**
+     * This bank with every pickup moved offset inches further from the 
+     * bridge, as a string with staggered or slanted pickups sees it.
+     * The ids stay the same.
+     */
+    PickupBank shifted(double offset) {
+	if (0.0 == offset) {
+	    return this;
+	}
+	PickupBank b = new PickupBank(count);
+	System.arraycopy(id, 0, b.id, 0, count);
+	System.arraycopy(width, 0, b.width, 0, count);
+	System.arraycopy(level, 0, b.level, 0, count);
+	System.arraycopy(polarity, 0, b.polarity, 0, count);
+	System.arraycopy(inductance, 0, b.inductance, 0, count);
+	System.arraycopy(resistance, 0, b.resistance, 0, count);
+	System.arraycopy(capacitance, 0, b.capacitance, 0, count);
+	System.arraycopy(conductance, 0, b.conductance, 0, count);
+	b.loaded = loaded;
+	for (int i = 0; i < count; i++) {
+	    b.position[i] = position[i] + offset;
+	}
+	return b;
+    }
+
+    /**
+     * Index of the pickup with this id, or -1.
+     */
+    int indexOf(int pickupId) {
+	for (int i = 0; i < count; i++) {
+	    if (id[i] == pickupId) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Would pickup i here respond the same as pickup j in b?
+     */
+    boolean sameParameters(int i, PickupBank b, int j) {
+	return (position[i] == b.position[j]) && (width[i] == b.width[j]) &&
+	    (level[i] == b.level[j]) && (polarity[i] == b.polarity[j]) &&
+	    sameLoad(i, b, j);
+    }
+
+    /**
+     * Does pickup i here drive the same load as pickup j in b?
+     */
+    boolean sameLoad(int i, PickupBank b, int j) {
+	return (inductance[i] == b.inductance[j]) && (resistance[i] == b.resistance[j]) &&
+	    (capacitance[i] == b.capacitance[j]) && (conductance[i] == b.conductance[j]);
+    }
+
+    /**
+     * Does pickup i's load pass everything through unchanged?  Without 
+     * a coil there's no current, so the cable and pots don't matter.
+     */
+    boolean idealLoad(int i) {
+	return (0.0 == inductance[i]) && (0.0 == resistance[i]);
+    }
+
+    /**
+     * The fraction of pickup i's voltage that gets to the output at each
+     * of count angular frequencies, into re and im, and its slope with
+     * respect to angular frequency into slopeRe and slopeIm if they 
+     * aren't null.  The coil, L and R in series, drives the cable's C
+     * and the pots' conductance G in parallel:
+     *
+     *   1 / (1 + R G - w^2 L C + j w (L G + R C))
+     *
+     * which peaks near 1 / sqrt(L C) and falls off at 12 dB per octave.
+     */
+    void loadAt(int i, double omegas[], double re[], double im[], 
+		double slopeRe[], double slopeIm[], int count) {
+	double l = inductance[i];
+	double r = resistance[i];
+	double c = capacitance[i];
+	double g = conductance[i];
+	double dc = 1.0 + r * g;
+	double lc = l * c;
+	double loss = l * g + r * c;
+	for (int j = 0; j < count; j++) {
+	    double w = omegas[j];
+	    double dRe = dc - w * w * lc;
+	    double dIm = w * loss;
+	    double oom2 = 1.0 / (dRe * dRe + dIm * dIm);
+	    double eRe = dRe * oom2;
+	    double eIm = -dIm * oom2;
+	    re[j] = eRe;
+	    im[j] = eIm;
+	    if (null != slopeRe) {
+		// -e^2 times the slope of the denominator
+		double sRe = -2.0 * w * lc;
+		double e2Re = eRe * eRe - eIm * eIm;
+		double e2Im = 2.0 * eRe * eIm;
+		slopeRe[j] = -(e2Re * sRe - e2Im * loss);
+		slopeIm[j] = -(e2Re * loss + e2Im * sRe);
+	    }
+	}
+    }
+
+
+    /**
+     * Return the index of the topmost pickup at this location,
+     * or -1 if none found.
+     * xFromBridge is the distance in inches from the bridge.
+     */
+    int pickupAt(double xFromBridge) {
+	for (int i = count - 1; 0 <= i; i--) {
+	    if (((position[i] - 0.5 * width[i]) <= xFromBridge) && 
+		(xFromBridge <= (position[i] + 0.5 * width[i]))) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Response of pickup i.
+     * radrelfreq the radian relative frequency:
+     *   Fstring pi / (Lscale Fopen)
+     */
+    double responseAt(int i, double radRelFreq) {
+	double widthPart = 1.0;
+	if (0.0 != width[i]) {
+	    double widthTemp = 0.5 * width[i] * radRelFreq;
+	    widthPart = Math.sin(widthTemp) / widthTemp;
+	}
+	return polarity[i] * level[i] * Math.sin(position[i] * radRelFreq) * widthPart;
+    }
+
+    /**
+     * Slope of responseAt(i, radRelFreq) with respect to radRelFreq.
+     */
+    double slopeAt(int i, double radRelFreq) {
+	double p = position[i];
+	double widthPart = 1.0;
+	double widthSlope = 0.0;
+	if (0.0 != width[i]) {
+	    double halfWidth = 0.5 * width[i];
+	    double widthTemp = halfWidth * radRelFreq;
+	    if (Math.abs(widthTemp) < 1.0e-4) {
+		widthPart = 1.0 - widthTemp * widthTemp / 6.0;
+		widthSlope = -halfWidth * widthTemp / 3.0;
+	    } else {
+		widthPart = Math.sin(widthTemp) / widthTemp;
+		widthSlope = halfWidth * (Math.cos(widthTemp) - widthPart) / widthTemp;
+	    }
+	}
+	return polarity[i] * level[i] * 
+	    (p * Math.cos(p * radRelFreq) * widthPart + Math.sin(p * radRelFreq) * widthSlope);
+    }
+
+    /**
+     * Batch version of responseAt.  Adds pickup i's response at
+     * each of count radian relative frequencies into amps.
+     * The loop bodies are kept free of branches and field loads.
+     */
+    void addResponse(int i, double radRelFreqs[], double amps[], int count) {
+	double scale = polarity[i] * level[i];
+	double p = position[i];
+	if (0.0 == width[i]) {
+	    for (int j = 0; j < count; j++) {
+		amps[j] += scale * Math.sin(p * radRelFreqs[j]);
+	    }
+	} else {
+	    double halfWidth = 0.5 * width[i];
+	    for (int j = 0; j < count; j++) {
+		double r = radRelFreqs[j];
+		double widthTemp = halfWidth * r;
+		amps[j] += scale * Math.sin(p * r) * (Math.sin(widthTemp) / widthTemp);
+	    }
+	}
+    }
+
+    /**
+     * addResponse, and the slope with respect to radian relative
+     * frequency into slopes, as slopeAt gives it.  sin and cos of each
+     * angle come from one tangent of the half angle.
+     */
+    void addResponseAndSlope(int i, double radRelFreqs[], double amps[], double slopes[],
+			     int count) {
+	double scale = polarity[i] * level[i];
+	double p = position[i];
+	double halfWidth = 0.5 * Math.abs(width[i]);	// sinc is even
+	for (int j = 0; j < count; j++) {
+	    double r = radRelFreqs[j];
+	    double t = Math.tan(0.5 * p * r);
+	    double d = 1.0 / (1.0 + t * t);
+	    double sin = 2.0 * t * d;
+	    double cos = (1.0 - t * t) * d;
+	    double widthPart = 1.0;
+	    double widthSlope = 0.0;
+	    double u = halfWidth * r;
+	    if (1.0e-3 < u) {
+		double tu = Math.tan(0.5 * u);
+		double du = 1.0 / (1.0 + tu * tu);
+		widthPart = 2.0 * tu * du / u;
+		widthSlope = halfWidth * ((1.0 - tu * tu) * du - widthPart) / u;
+	    } else if (0.0 < u) {
+		widthPart = 1.0 - u * u / 6.0;
+		widthSlope = -halfWidth * u / 3.0;
+	    }
+	    amps[j] += scale * sin * widthPart;
+	    slopes[j] += scale * (p * cos * widthPart + sin * widthSlope);
+	}
+    }
+
+    /**
+     * addResponseAndSlope using FastTrig.
+     */
+    void addResponseAndSlopeFast(int i, double radRelFreqs[], double amps[], double slopes[],
+				 int count) {
+	double scale = polarity[i] * level[i];
+	double p = position[i];
+	double halfWidth = 0.5 * Math.abs(width[i]);	// sinc is even
+	if (p < 0.0) {
+	    // sin is odd and cos even, as in FastTrig.sin: the response and
+	    // its slope are those at -p, negated
+	    p = -p;
+	    scale = -scale;
+	}
+	double limit = FastTrig.SINC_SERIES_LIMIT;
+	double table[] = FastTrig.table;
+	int mask = FastTrig.SIZE - 1;
+	int quarter = FastTrig.SIZE / 4;
+	double pSteps = p * FastTrig.STEPS_PER_RADIAN;
+	double uSteps = halfWidth * FastTrig.STEPS_PER_RADIAN;
+	// as FastTrig.sin, with cos a quarter turn on in the same table; 
+	// frequencies are never negative, so with p and halfWidth made
+	// positive neither are the angles
+	for (int j = 0; j < count; j++) {
+	    double r = radRelFreqs[j];
+	    double t = pSteps * r;
+	    long whole = (long) t;
+	    double frac = t - whole;
+	    int k = (int) (whole & mask);
+	    int kc = (int) ((whole + quarter) & mask);
+	    double sin = table[k] + frac * (table[k + 1] - table[k]);
+	    double cos = table[kc] + frac * (table[kc + 1] - table[kc]);
+	    double u = halfWidth * r;
+	    double widthPart;
+	    double widthSlope;
+	    if (u < limit) {
+		double u2 = u * u;
+		widthPart = 1.0 - u2 / 6.0 * (1.0 - u2 / 20.0 * (1.0 - u2 / 42.0 * (1.0 - u2 / 72.0)));
+		widthSlope = -halfWidth * u / 3.0 * (1.0 - u2 / 10.0 * (1.0 - u2 / 28.0));
+	    } else {
+		t = uSteps * r;
+		whole = (long) t;
+		frac = t - whole;
+		k = (int) (whole & mask);
+		kc = (int) ((whole + quarter) & mask);
+		double oou = 1.0 / u;
+		widthPart = oou * (table[k] + frac * (table[k + 1] - table[k]));
+		widthSlope = halfWidth * oou * (table[kc] + frac * (table[kc + 1] - table[kc]) - widthPart);
+	    }
+	    amps[j] += scale * sin * widthPart;
+	    slopes[j] += scale * (p * cos * widthPart + sin * widthSlope);
+	}
+    }
+
+    /**
+     * responseAt using FastTrig.
+     */
+    double responseAtFast(int i, double radRelFreq) {
+	double widthPart = 1.0;
+	if (0.0 != width[i]) {
+	    widthPart = FastTrig.sinc(0.5 * width[i] * radRelFreq);
+	}
+	return polarity[i] * level[i] * FastTrig.sin(position[i] * radRelFreq) * widthPart;
+    }
+
+    /**
+     * addResponse using FastTrig.
+     */
+    void addResponseFast(int i, double radRelFreqs[], double amps[], int count) {
+	double scale = polarity[i] * level[i];
+	double p = position[i];
+	if (0.0 == width[i]) {
+	    for (int j = 0; j < count; j++) {
+		amps[j] += scale * FastTrig.sin(p * radRelFreqs[j]);
+	    }
+	} else {
+	    double halfWidth = 0.5 * width[i];
+	    for (int j = 0; j < count; j++) {
+		double r = radRelFreqs[j];
+		amps[j] += scale * FastTrig.sin(p * r) * FastTrig.sinc(halfWidth * r);
+	    }
+	}
+    }
+
+    /**
+     * Pickup i's response into contribution, as addResponse would add
+     * it to zeros, and in the same pass that times its load (from 
+     * loadAt) added into re and im.
+     */
+    void addLoadedResponse(int i, double radRelFreqs[], double loadRe[], double loadIm[],
+			   double contribution[], double re[], double im[], int count) {
+	double scale = polarity[i] * level[i];
+	double p = position[i];
+	double halfWidth = 0.5 * width[i];
+	for (int j = 0; j < count; j++) {
+	    double r = radRelFreqs[j];
+	    double a = scale * Math.sin(p * r);
+	    if (0.0 != halfWidth) {
+		a *= Math.sin(halfWidth * r) / (halfWidth * r);
+	    }
+	    contribution[j] = a;
+	    re[j] += a * loadRe[j];
+	    im[j] += a * loadIm[j];
+	}
+    }
+
+    /**
+     * addLoadedResponse using FastTrig.
+     */
+    void addLoadedResponseFast(int i, double radRelFreqs[], double loadRe[], double loadIm[],
+			       double contribution[], double re[], double im[], int count) {
+	double scale = polarity[i] * level[i];
+	double p = position[i];
+	double halfWidth = 0.5 * width[i];
+	for (int j = 0; j < count; j++) {
+	    double r = radRelFreqs[j];
+	    double a = scale * FastTrig.sin(p * r);
+	    if (0.0 != halfWidth) {
+		a *= FastTrig.sinc(halfWidth * r);
+	    }
+	    contribution[j] = a;
+	    re[j] += a * loadRe[j];
+	    im[j] += a * loadIm[j];
+	}
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Control panel for an individual pickup.
+ * Provides control of position, width, level, polarity, coil, remove command.
+ */
+
+package com.till.pickupplot;
+
+import java.awt.*;
+import java.text.*;
+
+class PickupControlPanel extends Panel {
+    static DecimalFormat df23 = new DecimalFormat("#0.###");
+    Dimension preferredSize = new Dimension(PickupHeading.preferredSize.width, 22);
+	
+    Label numberField = new Label("", Label.CENTER);
+    TextField positionField = new TextField();
+    TextField widthField = new TextField();
+    TextField levelField = new TextField();
+    Scrollbar levelControl = new Scrollbar(Scrollbar.HORIZONTAL, 0, 10, -40, 10);
+    Choice polarityMenu	= new Choice();
+    Choice coilMenu = new Choice();
+    Button removeButton	= new Button("remove");
+    Pickup pickup;
+    PickupPlot pickupPlot;
+	
+    public PickupControlPanel(PickupPlot pickupPlot, Pickup pickup) {
+	this.pickupPlot = pickupPlot;
+	this.pickup = pickup;
+		
+	setLayout(null);
+	setBackground(pickup.color);
+		
+	polarityMenu.addItem("positive");
+	polarityMenu.addItem("negative");
+	for (int i = 0; i < Pickup.COIL_NAMES.length; i++) {
+	    coilMenu.addItem(Pickup.COIL_NAMES[i]);
+	}
+		
+	add(numberField);
+	add(positionField);
+	add(widthField);
+	add(levelField);
+	add(levelControl);
+	add(polarityMenu);
+	add(coilMenu);
+	add(removeButton);
+	validate();
+    }
+	
+    public void layout () {
+	int compCount = countComponents();
+	int hMax = 0;
+	for (int i = 0; i < compCount; i++) {
+	    int h = getComponent(i).preferredSize().height;
+	    if (hMax < h) {
+		hMax = h;
+	    }
+	}
+	int x = 0;
+		
+	numberField.reshape(x, 0, PickupHeading.NUMBER_WIDTH, hMax);
+	x += PickupHeading.NUMBER_WIDTH;
+	positionField.reshape(x, 0, PickupHeading.POSITION_WIDTH, hMax);
+	x += PickupHeading.POSITION_WIDTH;
+	widthField.reshape(x, 0, PickupHeading.WIDTH_WIDTH, hMax);
+	x += PickupHeading.WIDTH_WIDTH;
+	levelField.reshape(x, 0, PickupHeading.LEVEL_VALUE_WIDTH, hMax);
+	x += PickupHeading.LEVEL_VALUE_WIDTH;
+	
+	// scrollbars are funny
+	int sbHeight = levelControl.preferredSize().height;
+	levelControl.reshape(x, (hMax - sbHeight)/2, PickupHeading.LEVEL_CONTROL_WIDTH, sbHeight);
+	x += PickupHeading.LEVEL_CONTROL_WIDTH;
+
+	// menubars too
+	int pmHeight = polarityMenu.preferredSize().height;
+	polarityMenu.reshape(x, (hMax - pmHeight)/2, PickupHeading.POLARITY_WIDTH, pmHeight);
+	x += PickupHeading.POLARITY_WIDTH;
+	int cmHeight = coilMenu.preferredSize().height;
+	coilMenu.reshape(x, (hMax - cmHeight)/2, PickupHeading.COIL_WIDTH, cmHeight);
+	x += PickupHeading.COIL_WIDTH;
+
+	removeButton.reshape(x, 0, PickupHeading.REMOVE_WIDTH, hMax);
+	x += PickupHeading.REMOVE_WIDTH;
+	//preferredSize.width = x;
+	//preferredSize.height = hMax;
+    }
+
+    public Dimension preferredSize() {
+	return preferredSize;
+    }
+
+    public boolean handleEvent(Event evt) {
+	if ((Event.SCROLL_LINE_UP   == evt.id) ||
+	    (Event.SCROLL_LINE_DOWN == evt.id) ||
+	    (Event.SCROLL_PAGE_UP   == evt.id) ||
+	    (Event.SCROLL_PAGE_DOWN == evt.id) ||
+	    (Event.SCROLL_ABSOLUTE  == evt.id) ||
+	    (Event.SCROLL_BEGIN     == evt.id) ||
+	    (Event.SCROLL_END       == evt.id)) {
+	    int val = levelControl.getValue();
+	    pickup.setLevelDB(val);
+	    levelField.setText("" + val);
+	    pickupPlot.updateDisplay();
+	    return true;
+	}
+	return super.handleEvent(evt);
+    }
+
+    public boolean action(Event evt, Object what) {
+	Object source = evt.target;
+	if (source == positionField) {
+	    try {
+		pickup.position = Double.valueOf(positionField.getText()).doubleValue();
+		pickupPlot.updateDisplay();
+	    } catch (NumberFormatException nfe) {
+	    } 
+	} else if (source == widthField) {
+	    try {
+		pickup.width = Double.valueOf(widthField.getText()).doubleValue();
+		pickupPlot.updateDisplay();
+	    } catch (NumberFormatException nfe) {
+	    } 
+	} else if (source == levelField) {
+	    try {
+		double val = Double.valueOf(levelField.getText()).doubleValue();
+		levelControl.setValue((int) Math.round(val));
+		pickup.setLevelDB(val);
+		pickupPlot.updateDisplay();
+	    } catch (NumberFormatException nfe) {
+	    } 
+	} else if (source == polarityMenu) {
+	    pickup.polarity = (0 == polarityMenu.getSelectedIndex()) ? +1 : -1;
+	    pickupPlot.updateDisplay();
+	} else if (source == coilMenu) {
+	    pickup.setCoil(coilMenu.getSelectedIndex());
+	    pickupPlot.updateDisplay();
+	} else if (source == removeButton) {
+	    pickupPlot.removePickup(pickup, this);
+	} else {
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Reflect changes to the pickup
+     */
+    public void update() {
+    	numberField.setText("" + pickup.number);
+    	positionField.setText(df23.format(pickup.position));
+    	widthField.setText(df23.format(pickup.width));
+    	levelField.setText(df23.format(pickup.levelDB));
+	levelControl.setValue((int) Math.round(pickup.levelDB));
+	polarityMenu.select((0 < pickup.polarity) ? 0 : 1);
+	coilMenu.select(pickup.coil);
+    }
+}
@@ -0,0 +1,439 @@
+/**
+ * Runs a recording through the pickup model: designs an FIR filter from
+ * GuitarModel.responseAt and convolves a WAV file with it.
+ *
+ *   java com.till.pickupplot.PickupFilter -pickup 1.5,1,0,+ -pickup 6,1,0,-
+ *       -in di.wav -out filtered.wav
+ *
+ * Options:
+ *   -pickup pos,width,level,polarity
+ *                       once per pickup, as in PickupServer (default one
+ *                       pickup at 1.5 inches)
+ *   -scale inches       scale length (default 25.5)
+ *   -open hz            open string frequency (default 110)
+ *   -math exact|fast    Math.sin, or FastTrig's tables
+ *   -phase linear|minimum
+ *                       linear keeps the model's polarity and is delayed
+ *                       back into line with the input; minimum has no
+ *                       delay but only follows the magnitude
+ *                       (default linear)
+ *   -taps n             filter length (default 4095)
+ *   -gain db            on top of the filter's, whose peak is 0 dB
+ *   -bits 16|24         output sample size (default the input's, or 24)
+ *   -in file            WAV input: 8, 16, 24 or 32 bit PCM, or float
+ *   -out file           WAV output, the same length as the input
+ *
+ * The pickup response only depends on where a wave meets the pickups,
+ * not on which fret made it, so there's no fret option.
+ *
+ * The filter is designed by sampling the response on a fine FFT grid.
+ * For linear phase the (real, signed) response is transformed straight
+ * back and windowed; for minimum phase the log magnitude goes through
+ * the real cepstrum.  The convolution is FFT overlap-add, two blocks of
+ * input to a transform: the filter is real, so one block can ride in
+ * the real part and the next in the imaginary part, and they come back
+ * out separately.  The pickup filters are short (a few ms of delay
+ * between the pickups, at most), so plain overlap-add on one partition
+ * does.
+ *
+ * The input is memory mapped a window at a time, so a file of any size
+ * goes through a fixed amount of heap.  The channels are filtered in
+ * parallel on WorkerGang.shared.  The real time factor goes to stderr.
+ */
+
+package com.till.pickupplot;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+public class PickupFilter {
+    static double DESIGN_FLOOR = 1.0e-6;	// -120 dB, for the log in the cepstrum
+
+    Vector<double[]> pickups = new Vector<double[]>();	// double[4] each, from parsePickup
+    double scaleLength = 25.5;
+    double stringOpenFreq = 110.0;
+    boolean fastMath = false;
+    boolean minimumPhase = false;
+    int taps = 4095;
+    double gainDB = 0.0;
+    int bits = 0;			// 0 for the input's
+    String inName;
+    String outName;
+
+    double realTimeFactor;
+    double seconds;
+
+    public static void main(String args[]) throws Exception {
+	PickupFilter filter = new PickupFilter();
+	try {
+	    filter.parseArgs(args);
+	    filter.run();
+	} catch (IllegalArgumentException e) {
+	    System.err.println("PickupFilter: " + e.getMessage());
+	    System.exit(1);
+	}
+	System.err.println(filter.outName + ": " + RenderMetrics.fmt(filter.seconds) + " s, " +
+			   RenderMetrics.fmt(filter.realTimeFactor) + "x real time");
+    }
+
+    void parseArgs(String args[]) {
+	for (int i = 0; i < args.length; i++) {
+	    String opt = args[i];
+	    if (i + 1 == args.length) {
+		throw new IllegalArgumentException("missing value for " + opt);
+	    }
+	    String val = args[++i];
+	    if (opt.equals("-pickup")) {
+		pickups.addElement(PickupServer.parsePickup(val));
+	    } else if (opt.equals("-scale")) {
+		scaleLength = Double.parseDouble(val);
+	    } else if (opt.equals("-open")) {
+		stringOpenFreq = Double.parseDouble(val);
+	    } else if (opt.equals("-math")) {
+		if (!val.equals("exact") && !val.equals("fast")) {
+		    throw new IllegalArgumentException("bad math mode " + val);
+		}
+		fastMath = val.equals("fast");
+	    } else if (opt.equals("-phase")) {
+		if (!val.equals("linear") && !val.equals("minimum")) {
+		    throw new IllegalArgumentException("bad phase " + val);
+		}
+		minimumPhase = val.equals("minimum");
+	    } else if (opt.equals("-taps")) {
+		taps = Integer.parseInt(val);
+	    } else if (opt.equals("-gain")) {
+		gainDB = Double.parseDouble(val);
+	    } else if (opt.equals("-bits")) {
+		bits = Integer.parseInt(val);
+	    } else if (opt.equals("-in")) {
+		inName = val;
+	    } else if (opt.equals("-out")) {
+		outName = val;
+	    } else {
+		throw new IllegalArgumentException("unknown option " + opt);
+	    }
+	}
+	if ((null == inName) || (null == outName)) {
+	    throw new IllegalArgumentException("need -in and -out");
+	}
+	if ((taps < 1) || (1 << 20 < taps)) {
+	    throw new IllegalArgumentException("taps must be from 1 to " + (1 << 20));
+	}
+	if ((0 != bits) && (16 != bits) && (24 != bits)) {
+	    throw new IllegalArgumentException("bits must be 16 or 24");
+	}
+    }
+
+    GuitarModel newModel() {
+	GuitarModel m = new GuitarModel();
+	m.scaleLength = scaleLength;
+	m.stringOpenFreq = stringOpenFreq;
+	m.fastMath = fastMath;
+	for (int i = 0; i < pickups.size(); i++) {
+	    double spec[] = pickups.elementAt(i);
+	    Pickup p = m.addPickup();
+	    p.position = spec[0];
+	    p.width = spec[1];
+	    p.setLevelDB(spec[2]);
+	    p.polarity = (int) spec[3];
+	}
+	if (0 == m.pickupCount()) {
+	    m.addPickup().position = 1.5;
+	}
+	m.publishPickups();
+	return m;
+    }
+
+    static int powerOfTwoAtLeast(int n) {
+	int p = 1;
+	while (p < n) {
+	    p <<= 1;
+	}
+	return p;
+    }
+
+    /**
+     * m's response at the n bins of an n point FFT at this sample rate,
+     * scaled so the largest is 1, into re (and 0 into im).
+     */
+    static void sampleResponse(GuitarModel m, int sampleRate, int n, double re[], double im[]) {
+	double peak = 0.0;
+	re[0] = 0.0;		// a pickup doesn't see a string at rest
+	for (int k = 1; k <= n / 2; k++) {
+	    re[k] = m.responseAt((double) k * sampleRate / n);
+	    peak = Math.max(peak, Math.abs(re[k]));
+	}
+	double scale = (0.0 < peak) ? 1.0 / peak : 0.0;
+	for (int k = 0; k <= n / 2; k++) {
+	    re[k] *= scale;
+	    im[k] = 0.0;
+	}
+	for (int k = n / 2 + 1; k < n; k++) {
+	    re[k] = re[n - k];
+	    im[k] = 0.0;
+	}
+    }
+
+    /**
+     * A linear phase filter of this many taps for m: the response is
+     * real, so its transform is a zero phase impulse response, which is
+     * centered on tap taps / 2 and Hann windowed.  An odd number of taps
+     * is exactly symmetric.
+     */
+    static double[] linearPhase(GuitarModel m, int sampleRate, int taps) {
+	int n = 4 * powerOfTwoAtLeast(taps);
+	double re[] = new double[n];
+	double im[] = new double[n];
+	sampleResponse(m, sampleRate, n, re, im);
+	new FFT(n).transform(re, im, true);
+	double h[] = new double[taps];
+	int center = taps / 2;
+	for (int t = 0; t < taps; t++) {
+	    double w = 0.5 - 0.5 * Math.cos(2.0 * Math.PI * (t + 1) / (taps + 1));
+	    h[t] = w * re[(t - center + n) % n];
+	}
+	return h;
+    }
+
+    /**
+     * A minimum phase filter of this many taps with m's magnitude
+     * response, by way of the real cepstrum: the log magnitude's
+     * transform, folded onto positive time, transformed back and
+     * exponentiated.  The last quarter of the taps is tapered off.
+     */
+    static double[] minimumPhase(GuitarModel m, int sampleRate, int taps) {
+	int n = 8 * powerOfTwoAtLeast(taps);
+	FFT fft = new FFT(n);
+	double re[] = new double[n];
+	double im[] = new double[n];
+	sampleResponse(m, sampleRate, n, re, im);
+	for (int k = 0; k < n; k++) {
+	    re[k] = Math.log(Math.max(Math.abs(re[k]), DESIGN_FLOOR));
+	}
+	fft.transform(re, im, true);
+	for (int k = 1; k < n / 2; k++) {
+	    re[k] *= 2.0;
+	    im[k] *= 2.0;
+	}
+	for (int k = n / 2 + 1; k < n; k++) {
+	    re[k] = 0.0;
+	    im[k] = 0.0;
+	}
+	fft.transform(re, im, false);
+	for (int k = 0; k < n; k++) {
+	    double a = Math.exp(re[k]);
+	    double b = im[k];
+	    re[k] = a * Math.cos(b);
+	    im[k] = a * Math.sin(b);
+	}
+	fft.transform(re, im, true);
+	double h[] = new double[taps];
+	int taper = taps / 4;
+	for (int t = 0; t < taps; t++) {
+	    int fromEnd = taps - 1 - t;
+	    double w = (fromEnd < taper) ? 0.5 - 0.5 * Math.cos(Math.PI * (fromEnd + 1) / (taper + 1)) : 1.0;
+	    h[t] = w * re[t];
+	}
+	return h;
+    }
+
+    /**
+     * Filter inName into outName.
+     */
+    void run() throws IOException {
+	long t0 = System.nanoTime();
+	final WavReader in = new WavReader(inName);
+	GuitarModel m = newModel();
+	double h[] = minimumPhase ? minimumPhase(m, in.sampleRate, taps)
+	    : linearPhase(m, in.sampleRate, taps);
+	final int channels = in.channels;
+	final Convolver convolvers[] = new Convolver[channels];
+	convolvers[0] = new Convolver(h);
+	for (int c = 1; c < channels; c++) {
+	    convolvers[c] = new Convolver(convolvers[0]);
+	}
+	final int step = convolvers[0].stepSize();
+	final double inBlock[][] = new double[channels][step];
+	final double outBlock[][] = new double[channels][step];
+	int outBits = (0 != bits) ? bits : ((16 == in.bits) ? 16 : 24);
+	long frames = in.frames;
+	OutputStream out = new BufferedOutputStream(new FileOutputStream(outName), 1 << 16);
+	WavWriter wav = new WavWriter(out, in.sampleRate, channels, outBits, frames, step);
+	double gain = Math.pow(10.0, gainDB / 20.0);
+
+	// the linear phase filter's delay is dropped from the front, and
+	// made up with the tail at the end
+	long skip = minimumPhase ? 0 : taps / 2;
+	long written = 0;
+	for (long read = 0; written < frames; read += step) {
+	    final long first = read;
+	    final int count = (int) Math.max(0, Math.min(step, frames - read));
+	    in.map(first, count);
+	    WorkerGang.shared.run(new WorkerGang.Loop() {
+		void run(int c) {
+		    in.read(c, first, count, inBlock[c]);
+		    for (int j = count; j < step; j++) {
+			inBlock[c][j] = 0.0;
+		    }
+		    convolvers[c].process(inBlock[c], outBlock[c]);
+		}
+	    }, channels);
+	    int from = (int) Math.min(step, skip);
+	    skip -= from;
+	    int n = (int) Math.min(step - from, frames - written);
+	    wav.write(outBlock, from, n, gain);
+	    written += n;
+	}
+	wav.flush();
+	out.close();
+	in.close();
+	seconds = (double) frames / in.sampleRate;
+	realTimeFactor = seconds / Math.max(1.0e-9, (System.nanoTime() - t0) / 1.0e9);
+    }
+}
+
+/**
+ * Reads the samples of a WAV file through a memory mapped window on its
+ * data, so only the window's pages are ever in memory.  Call map for a
+ * range of frames, then read any channel of it, from any thread.
+ */
+class WavReader {
+    static long WINDOW = 1L << 28;	// bytes
+
+    RandomAccessFile file;
+    FileChannel channel;
+    int format;			// 1 PCM, 3 float
+    int channels;
+    int sampleRate;
+    int bits;
+    int frameSize;		// bytes
+    long dataOffset;
+    long frames;
+
+    ByteBuffer window;
+    ByteBuffer views[];		// one per channel, so reads don't share a position
+    long windowFirst;		// frames
+    long windowFrames;
+
+    WavReader(String name) throws IOException {
+	file = new RandomAccessFile(name, "r");
+	channel = file.getChannel();
+	byte b[] = new byte[12];
+	file.readFully(b);
+	if (!new String(b, 0, 4, "ISO-8859-1").equals("RIFF") ||
+	    !new String(b, 8, 4, "ISO-8859-1").equals("WAVE")) {
+	    throw new IllegalArgumentException(name + " isn't a WAV file");
+	}
+	long pos = 12;
+	long length = file.length();
+	while (true) {
+	    if (length < pos + 8) {
+		throw new IllegalArgumentException(name + " has no data");
+	    }
+	    file.seek(pos);
+	    file.readFully(b, 0, 8);
+	    String id = new String(b, 0, 4, "ISO-8859-1");
+	    long size = getInt(b, 4, 4) & 0xffffffffL;
+	    if (id.equals("fmt ")) {
+		if (size < 16) {
+		    throw new IllegalArgumentException(name + " has a short format chunk");
+		}
+		byte f[] = new byte[(int) Math.min(size, 40)];
+		file.readFully(f);
+		format = (int) getInt(f, 0, 2);
+		channels = (int) getInt(f, 2, 2);
+		sampleRate = (int) getInt(f, 4, 4);
+		bits = (int) getInt(f, 14, 2);
+		if ((0xfffe == format) && (26 <= f.length)) {
+		    format = (int) getInt(f, 24, 2);	// the subformat
+		}
+		// before frameSize is worked out from them
+		boolean ok = ((1 == format) &&
+			      ((8 == bits) || (16 == bits) || (24 == bits) || (32 == bits))) ||
+		    ((3 == format) && (32 == bits));
+		if (!ok || (channels < 1)) {
+		    throw new IllegalArgumentException(name + ": can't read format " + format +
+						       " with " + bits + " bits and " + channels +
+						       " channels");
+		}
+	    } else if (id.equals("data")) {
+		dataOffset = pos + 8;
+		// a stream that didn't know its length may say anything
+		size = Math.min(size, length - dataOffset);
+		if (0 == channels) {
+		    throw new IllegalArgumentException(name + " has data before its format");
+		}
+		frameSize = channels * bits / 8;
+		frames = size / frameSize;
+		break;
+	    }
+	    pos += 8 + size + (size & 1);
+	}
+	views = new ByteBuffer[channels];
+    }
+
+    static long getInt(byte b[], int i, int count) {
+	long v = 0;
+	for (int k = count - 1; 0 <= k; k--) {
+	    v = (v << 8) | (b[i + k] & 0xff);
+	}
+	return v;
+    }
+
+    /**
+     * Make sure frames first to first + count are in the window.
+     */
+    void map(long first, int count) throws IOException {
+	if ((0 == count) || (null != window) && (windowFirst <= first) &&
+	    (first + count <= windowFirst + windowFrames)) {
+	    return;
+	}
+	windowFirst = first;
+	windowFrames = Math.max(count, Math.min(frames - first, WINDOW / frameSize));
+	window = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + first * frameSize,
+			     windowFrames * frameSize);
+	for (int c = 0; c < channels; c++) {
+	    views[c] = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+    }
+
+    /**
+     * count samples of channel c from frame first on, which must be in
+     * the window, into samples as -1 to 1.
+     */
+    void read(int c, long first, int count, double samples[]) {
+	ByteBuffer v = views[c];
+	int i = (int) ((first - windowFirst) * frameSize) + c * bits / 8;
+	int stride = frameSize;
+	if (3 == format) {
+	    for (int j = 0; j < count; j++, i += stride) {
+		samples[j] = v.getFloat(i);
+	    }
+	} else if (16 == bits) {
+	    for (int j = 0; j < count; j++, i += stride) {
+		samples[j] = v.getShort(i) * (1.0 / 32768.0);
+	    }
+	} else if (24 == bits) {
+	    for (int j = 0; j < count; j++, i += stride) {
+		int s = (v.get(i) & 0xff) | ((v.get(i + 1) & 0xff) << 8) | (v.get(i + 2) << 16);
+		samples[j] = s * (1.0 / 8388608.0);
+	    }
+	} else if (32 == bits) {
+	    for (int j = 0; j < count; j++, i += stride) {
+		samples[j] = v.getInt(i) * (1.0 / 2147483648.0);
+	    }
+	} else {
+	    for (int j = 0; j < count; j++, i += stride) {
+		samples[j] = ((v.get(i) & 0xff) - 128) * (1.0 / 128.0);
+	    }
+	}
+    }
+
+    void close() throws IOException {
+	window = null;
+	channel.close();
+	file.close();
+    }
+}
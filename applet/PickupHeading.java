@@ -0,0 +1,81 @@
+/**
+ * The heading above the pickup control panels.
+ */
+
+package com.till.pickupplot;
+
+import java.awt.*;
+
+class PickupHeading extends Panel {
+    Label pickupLabel 	= new Label("Pickup", Label.CENTER);
+    Label pickupLabel2	= new Label("number", Label.CENTER);
+    Label positionLabel	= new Label("Position", Label.CENTER);
+    Label positionLabel2 = new Label("(inches)", Label.CENTER);
+    Label widthLabel = new Label("Width", Label.CENTER);
+    Label widthLabel2 = new Label("(inches)", Label.CENTER);
+    Label levelLabel = new Label("Level", Label.CENTER);
+    Label levelLabel2 = new Label("(dB)", Label.CENTER);
+    Label levelLabel3 = new Label("Level", Label.CENTER);
+    Label levelLabel4 = new Label("control", Label.CENTER);
+    Label polarityLabel	= new Label("Polarity", Label.CENTER);
+    Label coilLabel = new Label("Coil", Label.CENTER);
+    static Dimension preferredSize;
+	
+    public static int NUMBER_WIDTH = 48;
+    public static int POSITION_WIDTH = 50;
+    public static int WIDTH_WIDTH = 50;
+    public static int LEVEL_VALUE_WIDTH	= 50;
+    public static int LEVEL_CONTROL_WIDTH = 100;
+    public static int POLARITY_WIDTH = 72;
+    public static int COIL_WIDTH = 96;
+    public static int REMOVE_WIDTH = 50;
+    public static int HEIGHT = 28;
+    public static int HEIGHT1 = 14;
+    public static int ROW2 = 14;
+	
+    public PickupHeading() {
+	setLayout(null);
+	int x = 0;
+	pickupLabel.reshape(x, 0, NUMBER_WIDTH, HEIGHT1);
+	pickupLabel2.reshape(x, ROW2, NUMBER_WIDTH, HEIGHT1);
+	x += NUMBER_WIDTH;
+	positionLabel.reshape(x, 0, POSITION_WIDTH, HEIGHT1);
+	positionLabel2.reshape(x, ROW2, POSITION_WIDTH, HEIGHT1);
+	x += POSITION_WIDTH;
+	widthLabel.reshape(x, 0, WIDTH_WIDTH, HEIGHT1);
+	widthLabel2.reshape(x, ROW2, WIDTH_WIDTH, HEIGHT1);
+	x += WIDTH_WIDTH;
+	levelLabel.reshape(x, 0, LEVEL_VALUE_WIDTH, HEIGHT1);
+	levelLabel2.reshape(x, ROW2, LEVEL_VALUE_WIDTH, HEIGHT1);
+	x += LEVEL_VALUE_WIDTH;
+	levelLabel3.reshape(x, 0, LEVEL_CONTROL_WIDTH, HEIGHT1);
+	levelLabel4.reshape(x, ROW2, LEVEL_CONTROL_WIDTH, HEIGHT1);
+	x += LEVEL_CONTROL_WIDTH;
+	polarityLabel.reshape(x, 0, POLARITY_WIDTH, HEIGHT);
+	x += POLARITY_WIDTH;
+	coilLabel.reshape(x, 0, COIL_WIDTH, HEIGHT);
+	x += COIL_WIDTH;
+	x += REMOVE_WIDTH;
+		
+	if (null == preferredSize) {
+	    preferredSize = new Dimension(x, HEIGHT + 2);
+	}
+		
+	add(pickupLabel);
+	add(pickupLabel2);
+	add(positionLabel);
+	add(positionLabel2);
+	add(widthLabel);
+	add(widthLabel2);
+	add(levelLabel);
+	add(levelLabel2);
+	add(levelLabel3);
+	add(levelLabel4);
+	add(polarityLabel);
+	add(coilLabel);
+    }	
+		
+    public Dimension preferredSize() {
+	return preferredSize;
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Load test for PickupServer: a number of clients send requests back to
+ * back for a while, each with its own random pickup layout, and then the
+ * throughput and latency percentiles are printed, along with the
+ * server's own view from /stats.
+ *
+ *   java -Djava.awt.headless=true com.till.pickupplot.PickupLoadTest
+ *       -serve -clients 32 -seconds 10 -path /plot.png
+ *
+ * Options:
+ *   -port n             (default 8080)
+ *   -path p             /curve, /plot.png or /guitar.png (default /curve)
+ *   -clients n          requests in flight at once (default 16)
+ *   -seconds s          how long to run (default 10)
+ *   -pickups n          pickups in each layout (default 3)
+ *   -serve              start a server in this JVM first
+ *   -executor e         the server's executor, with -serve
+ */
+
+package com.till.pickupplot;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+public class PickupLoadTest {
+    int port = 8080;
+    String path = "/curve";
+    int clientCount = 16;
+    double seconds = 10.0;
+    int pickupCount = 3;
+    boolean serve = false;
+    String executorKind = "virtual";
+
+    public static void main(String args[]) throws Exception {
+	PickupLoadTest test = new PickupLoadTest();
+	try {
+	    test.parseArgs(args);
+	} catch (IllegalArgumentException e) {
+	    System.err.println("PickupLoadTest: " + e.getMessage());
+	    System.exit(1);
+	}
+	PickupServer server = null;
+	if (test.serve) {
+	    System.setProperty("java.awt.headless", "true");
+	    server = new PickupServer();
+	    server.start(test.port, test.executorKind);
+	    System.out.println("server using " + server.executorName);
+	}
+	test.run();
+	if (null != server) {
+	    server.stop();
+	}
+    }
+
+    void parseArgs(String args[]) {
+	for (int i = 0; i < args.length; i++) {
+	    String opt = args[i];
+	    if (opt.equals("-serve")) {
+		serve = true;
+		continue;
+	    }
+	    if (i + 1 == args.length) {
+		throw new IllegalArgumentException("missing value for " + opt);
+	    }
+	    String val = args[++i];
+	    if (opt.equals("-port")) {
+		port = Integer.parseInt(val);
+	    } else if (opt.equals("-path")) {
+		path = val;
+	    } else if (opt.equals("-clients")) {
+		clientCount = Integer.parseInt(val);
+	    } else if (opt.equals("-seconds")) {
+		seconds = Double.parseDouble(val);
+	    } else if (opt.equals("-pickups")) {
+		pickupCount = Integer.parseInt(val);
+	    } else if (opt.equals("-executor")) {
+		executorKind = val;
+	    } else {
+		throw new IllegalArgumentException("unknown option " + opt);
+	    }
+	}
+	if ((clientCount < 1) || (seconds <= 0.0) || (pickupCount < 1)) {
+	    throw new IllegalArgumentException("bad clients, seconds or pickups");
+	}
+    }
+
+    void run() throws Exception {
+	// a few requests first, so the server has been through the JIT
+	Client warmup = new Client(-1, System.currentTimeMillis() + 2000);
+	warmup.run();
+
+	long start = System.currentTimeMillis();
+	long end = start + (long) (seconds * 1000.0);
+	Client clients[] = new Client[clientCount];
+	Thread threads[] = new Thread[clientCount];
+	for (int i = 0; i < clientCount; i++) {
+	    clients[i] = new Client(i, end);
+	    threads[i] = new Thread(clients[i], "load client " + i);
+	    threads[i].start();
+	}
+	int n = 0;
+	int errors = 0;
+	long bytes = 0;
+	for (int i = 0; i < clientCount; i++) {
+	    threads[i].join();
+	    n += clients[i].count;
+	    errors += clients[i].errors;
+	    bytes += clients[i].bytes;
+	}
+	double elapsed = (System.currentTimeMillis() - start) / 1000.0;
+	long all[] = new long[n];
+	int k = 0;
+	for (int i = 0; i < clientCount; i++) {
+	    System.arraycopy(clients[i].latencies, 0, all, k, clients[i].count);
+	    k += clients[i].count;
+	}
+	Arrays.sort(all);
+
+	System.out.println(path + ", " + clientCount + " clients, " + pickupCount +
+			   " pickups, " + elapsed + " s");
+	System.out.println("requests    " + n + " (" + errors + " errors)");
+	System.out.println("throughput  " + RenderMetrics.fmt(n / elapsed) + " requests/s, " +
+			   RenderMetrics.fmt(bytes / elapsed / (1 << 20)) + " MB/s");
+	System.out.println("latency ms  p50 " + ms(all, n, 0.50) + "  p90 " + ms(all, n, 0.90) +
+			   "  p99 " + ms(all, n, 0.99) + "  max " + ms(all, n, 1.0));
+	System.out.print("server      " + new String(get("/stats"), "UTF-8"));
+    }
+
+    static String ms(long sorted[], int n, double p) {
+	return RenderMetrics.fmt(PickupServer.percentile(sorted, n, p) / 1.0e6);
+    }
+
+    byte[] get(String pathAndQuery) throws IOException {
+	URL url = new URL("http://localhost:" + port + pathAndQuery);
+	HttpURLConnection c = (HttpURLConnection) url.openConnection();
+	InputStream in = (c.getResponseCode() < 400) ? c.getInputStream() : c.getErrorStream();
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	byte buf[] = new byte[8192];
+	int len;
+	while (0 < (len = in.read(buf))) {
+	    out.write(buf, 0, len);
+	}
+	in.close();
+	if (200 != c.getResponseCode()) {
+	    throw new IOException(c.getResponseCode() + " " + out.toString("UTF-8").trim());
+	}
+	return out.toByteArray();
+    }
+
+    /**
+     * One client, sending requests one after another until the end time.
+     */
+    class Client implements Runnable {
+	long end;
+	Random random;
+	long latencies[] = new long[1024];	// nanoseconds
+	int count;
+	int errors;
+	long bytes;
+
+	Client(int id, long end) {
+	    this.end = end;
+	    random = new Random(id);
+	}
+
+	public void run() {
+	    StringBuffer query = new StringBuffer();
+	    while (System.currentTimeMillis() < end) {
+		query.setLength(0);
+		query.append(path).append('?');
+		for (int p = 0; p < pickupCount; p++) {
+		    query.append((0 == p) ? "pickup=" : "&pickup=");
+		    PickupSweep.appendFixed(query, 0.5 + 7.0 * random.nextDouble(), 3);
+		    query.append(random.nextBoolean() ? ",1,0,%2B" : ",1,0,-");
+		}
+		long t0 = System.nanoTime();
+		try {
+		    bytes += get(query.toString()).length;
+		} catch (IOException e) {
+		    if (0 == errors++) {
+			System.err.println("PickupLoadTest: " + e.getMessage());
+		    }
+		}
+		if (count == latencies.length) {
+		    long l[] = new long[2 * count];
+		    System.arraycopy(latencies, 0, l, 0, count);
+		    latencies = l;
+		}
+		latencies[count++] = System.nanoTime() - t0;
+	    }
+	}
+    }
+}
@@ -0,0 +1,384 @@
+/**
+ * Pickup placement optimizer.
+ *
+ * Searches position, width, level and polarity of N pickups for the
+ * layout whose response comes closest, in dB, to a target curve.  The
+ * target is a CSV file of frequency (Hz), level (dB) pairs, one per line;
+ * lines that don't parse (headers, comments) are skipped.
+ *
+ *   java com.till.pickupplot.PickupOptimizer -target target.csv -pickups 3
+ *
+ * Options:
+ *   -target file        target curve (required)
+ *   -pickups n          number of pickups (default 3)
+ *   -scale inches       scale length (default 25.5)
+ *   -open hz            open string frequency (default 110)
+ *   -frets n            number of frets, limits how far up the neck
+ *                       a pickup can go (default 24)
+ *   -starts n           random starting layouts (default 16)
+ *   -seed n             random seed (default 1)
+ *
+ * The search is a multi-start pattern search; each start also gets a few
+ * random kicks to climb out of the local minima the comb notches make.
+ * Each worker thread takes starting layouts from a shared counter and
+ * keeps its own model and evaluation buffer, so the inner loop doesn't
+ * allocate.  Each start is seeded from its own index, so the result 
+ * doesn't depend on how the starts were spread over the threads.
+ */
+
+package com.till.pickupplot;
+
+import java.io.*;
+import java.util.*;
+
+public class PickupOptimizer {
+    static String USAGE = "usage: java com.till.pickupplot.PickupOptimizer -target file " +
+	"[-pickups n] [-scale inches] [-open hz] [-frets n] [-starts n] [-seed n]";
+    static double DB_FLOOR = -40.0;	// same as the plot's dbMin
+    static double MIN_WIDTH = 0.25;
+    static double MAX_WIDTH = 3.0;
+    static double MIN_LEVEL_DB = -40.0;
+    static double MAX_LEVEL_DB = 0.0;
+
+    // Per pickup there are three continuous parameters, kept in this
+    // order in the parameter vector, plus a polarity.
+    static int POSITION = 0;
+    static int WIDTH = 1;
+    static int LEVEL = 2;
+    static int PARAMS = 3;
+    static double INITIAL_STEP[] = {1.0, 0.5, 6.0};
+    static double FINAL_STEP[] = {0.002, 0.002, 0.05};
+    static int KICKS = 8;		// perturbations tried per start
+
+    double targetFreqs[];
+    double targetDB[];
+    int pickupCount = 3;
+    double scaleLength = 25.5;
+    double stringOpenFreq = 110.0;
+    int fretCount = 24;
+    int starts = 16;
+    long seed = 1;
+
+    double lower[];
+    double upper[];
+    int nextStart;
+    double bestError;
+    double bestParams[];
+    int bestPolarity[];
+    int bestStart;
+
+    public PickupOptimizer(double targetFreqs[], double targetDB[]) {
+	this.targetFreqs = targetFreqs;
+	this.targetDB = new double[targetDB.length];
+	for (int i = 0; i < targetDB.length; i++) {
+	    this.targetDB[i] = Math.max(DB_FLOOR, targetDB[i]);
+	}
+    }
+
+    public static void main(String args[]) throws IOException {
+	String targetName = null;
+	int pickups = 3;
+	GuitarModel m = new GuitarModel();
+	int starts = 16;
+	long seed = 1;
+	try {
+	    for (int i = 0; i < args.length; i++) {
+		String opt = args[i];
+		if (i + 1 == args.length) {
+		    throw new IllegalArgumentException("missing value for " + opt);
+		}
+		String val = args[++i];
+		if (opt.equals("-target")) {
+		    targetName = val;
+		} else if (opt.equals("-pickups")) {
+		    pickups = Integer.parseInt(val);
+		} else if (opt.equals("-scale")) {
+		    m.scaleLength = Double.parseDouble(val);
+		} else if (opt.equals("-open")) {
+		    m.stringOpenFreq = Double.parseDouble(val);
+		} else if (opt.equals("-frets")) {
+		    m.fretCount = Integer.parseInt(val);
+		} else if (opt.equals("-starts")) {
+		    starts = Integer.parseInt(val);
+		} else if (opt.equals("-seed")) {
+		    seed = Long.parseLong(val);
+		} else {
+		    throw new IllegalArgumentException("unknown option " + opt);
+		}
+	    }
+	    if (null == targetName) {
+		throw new IllegalArgumentException("-target is required");
+	    }
+	} catch (IllegalArgumentException e) {
+	    System.err.println("PickupOptimizer: " + e.getMessage());
+	    System.err.println(USAGE);
+	    System.exit(1);
+	}
+	PickupOptimizer opt = readTarget(new FileReader(targetName));
+	opt.setModel(m, pickups);
+	opt.starts = starts;
+	opt.seed = seed;
+	long start = System.currentTimeMillis();
+	opt.run(Runtime.getRuntime().availableProcessors());
+	long ms = System.currentTimeMillis() - start;
+	for (int p = 0; p < pickups; p++) {
+	    int k = p * PARAMS;
+	    System.out.println("pickup " + (p + 1) +
+			       " position " + opt.bestParams[k + POSITION] +
+			       " width " + opt.bestParams[k + WIDTH] +
+			       " level " + opt.bestParams[k + LEVEL] + " dB" +
+			       " polarity " + (0 < opt.bestPolarity[p] ? "+" : "-"));
+	}
+	System.out.println("rms error " + Math.sqrt(opt.bestError) + " dB, " +
+			   opt.starts + " starts in " + ms + " ms");
+    }
+
+    /**
+     * Read a target curve of frequency, dB pairs.
+     */
+    static PickupOptimizer readTarget(Reader r) throws IOException {
+	BufferedReader in = new BufferedReader(r);
+	Vector<Double> freqs = new Vector<Double>();
+	Vector<Double> dbs = new Vector<Double>();
+	String line;
+	while (null != (line = in.readLine())) {
+	    StringTokenizer st = new StringTokenizer(line, ", \t;");
+	    if (st.countTokens() < 2) {
+		continue;
+	    }
+	    try {
+		Double f = Double.valueOf(st.nextToken());
+		Double db = Double.valueOf(st.nextToken());
+		if (0.0 < f.doubleValue()) {
+		    freqs.addElement(f);
+		    dbs.addElement(db);
+		}
+	    } catch (NumberFormatException nfe) {
+	    }
+	}
+	in.close();
+	if (freqs.size() == 0) {
+	    throw new IOException("no frequency, dB pairs in target");
+	}
+	double f[] = new double[freqs.size()];
+	double db[] = new double[freqs.size()];
+	for (int i = 0; i < f.length; i++) {
+	    f[i] = freqs.elementAt(i).doubleValue();
+	    db[i] = dbs.elementAt(i).doubleValue();
+	}
+	return new PickupOptimizer(f, db);
+    }
+
+    /**
+     * Take the string and neck from m, and fit this many pickups.
+     */
+    void setModel(GuitarModel m, int pickupCount) {
+	this.pickupCount = pickupCount;
+	scaleLength = m.scaleLength;
+	stringOpenFreq = m.stringOpenFreq;
+	fretCount = m.fretCount;
+	int n = pickupCount * PARAMS;
+	lower = new double[n];
+	upper = new double[n];
+	double neckEnd = m.fretPosition(fretCount);
+	for (int p = 0; p < pickupCount; p++) {
+	    int k = p * PARAMS;
+	    lower[k + POSITION] = 0.5;
+	    upper[k + POSITION] = Math.max(1.0, neckEnd - 0.5);
+	    lower[k + WIDTH] = MIN_WIDTH;
+	    upper[k + WIDTH] = MAX_WIDTH;
+	    lower[k + LEVEL] = MIN_LEVEL_DB;
+	    upper[k + LEVEL] = MAX_LEVEL_DB;
+	}
+    }
+
+    /**
+     * Run the search on this many threads.  Returns when all the starts
+     * are done; the answer is in bestParams and bestPolarity.
+     */
+    void run(int threadCount) {
+	if (null == lower) {
+	    setModel(new GuitarModel(), pickupCount);
+	}
+	nextStart = 0;
+	bestError = Double.MAX_VALUE;
+	bestParams = null;
+	bestPolarity = null;
+	Thread threads[] = new Thread[Math.max(1, Math.min(threadCount, starts))];
+	for (int i = 0; i < threads.length; i++) {
+	    threads[i] = new Thread(new Worker(), "PickupOptimizer " + i);
+	    threads[i].start();
+	}
+	for (int i = 0; i < threads.length; i++) {
+	    try {
+		threads[i].join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return;
+	    }
+	}
+    }
+
+    synchronized int takeStart() {
+	return (nextStart < starts) ? nextStart++ : -1;
+    }
+
+    synchronized void offer(int start, double error, double params[], int polarity[]) {
+	if ((error < bestError) || ((error == bestError) && (start < bestStart))) {
+	    bestError = error;
+	    bestStart = start;
+	    bestParams = params.clone();
+	    bestPolarity = polarity.clone();
+	}
+    }
+
+    /**
+     * Set the first pickupCount pickups of m to the best layout found.
+     * The caller publishes the change.
+     */
+    void apply(GuitarModel m) {
+	for (int p = 0; p < pickupCount; p++) {
+	    int k = p * PARAMS;
+	    Pickup pickup = m.getPickup(p);
+	    pickup.position = bestParams[k + POSITION];
+	    pickup.width = bestParams[k + WIDTH];
+	    pickup.setLevelDB(bestParams[k + LEVEL]);
+	    pickup.polarity = bestPolarity[p];
+	}
+    }
+
+    /**
+     * One search thread.  Everything it touches in the inner loop is
+     * allocated here, once.
+     */
+    class Worker implements Runnable {
+	GuitarModel model = new GuitarModel();
+	PickupBank bank = new PickupBank(pickupCount);	// ours alone, changed in place
+	double amps[] = new double[targetFreqs.length];
+	double params[] = new double[pickupCount * PARAMS];
+	int polarity[] = new int[pickupCount];
+	double step[] = new double[pickupCount * PARAMS];
+	double saved[] = new double[pickupCount * PARAMS];
+	int savedPolarity[] = new int[pickupCount];
+	Random random = new Random();
+
+	Worker() {
+	    model.scaleLength = scaleLength;
+	    model.stringOpenFreq = stringOpenFreq;
+	    model.fretCount = fretCount;
+	    model.bank = bank;
+	}
+
+	public void run() {
+	    int start;
+	    while (0 <= (start = takeStart())) {
+		random.setSeed(seed * 1000003L + start);
+		for (int k = 0; k < params.length; k++) {
+		    params[k] = lower[k] + random.nextDouble() * (upper[k] - lower[k]);
+		}
+		for (int p = 0; p < pickupCount; p++) {
+		    polarity[p] = random.nextBoolean() ? +1 : -1;
+		}
+		double error = search();
+		// kick one pickup somewhere else and search again,
+		// keeping the result only if it's better
+		System.arraycopy(params, 0, saved, 0, params.length);
+		System.arraycopy(polarity, 0, savedPolarity, 0, pickupCount);
+		for (int kick = 0; kick < KICKS; kick++) {
+		    int k = random.nextInt(pickupCount) * PARAMS + POSITION;
+		    params[k] = lower[k] + random.nextDouble() * (upper[k] - lower[k]);
+		    double e = search();
+		    if (e < error) {
+			error = e;
+			System.arraycopy(params, 0, saved, 0, params.length);
+			System.arraycopy(polarity, 0, savedPolarity, 0, pickupCount);
+		    } else {
+			System.arraycopy(saved, 0, params, 0, params.length);
+			System.arraycopy(savedPolarity, 0, polarity, 0, pickupCount);
+		    }
+		}
+		offer(start, error, params, polarity);
+	    }
+	}
+
+	/**
+	 * Pattern search from the current params: try a step each way
+	 * on each parameter, keep anything that helps, and halve the steps
+	 * when nothing does.  Polarity flips are tried at each halving.
+	 */
+	double search() {
+	    for (int k = 0; k < step.length; k++) {
+		step[k] = INITIAL_STEP[k % PARAMS];
+	    }
+	    double error = evaluate();
+	    boolean done = false;
+	    while (!done) {
+		boolean improved = false;
+		for (int k = 0; k < params.length; k++) {
+		    double old = params[k];
+		    for (int dir = -1; dir <= 1; dir += 2) {
+			double v = Math.max(lower[k], Math.min(upper[k], old + dir * step[k]));
+			if (v == old) {
+			    continue;
+			}
+			params[k] = v;
+			double e = evaluate();
+			if (e < error) {
+			    error = e;
+			    improved = true;
+			    break;
+			}
+			params[k] = old;
+		    }
+		}
+		if (!improved) {
+		    for (int p = 0; p < pickupCount; p++) {
+			polarity[p] = -polarity[p];
+			double e = evaluate();
+			if (e < error) {
+			    error = e;
+			    improved = true;
+			} else {
+			    polarity[p] = -polarity[p];
+			}
+		    }
+		}
+		if (!improved) {
+		    done = true;
+		    for (int k = 0; k < step.length; k++) {
+			step[k] *= 0.5;
+			if (FINAL_STEP[k % PARAMS] < step[k]) {
+			    done = false;
+			}
+		    }
+		}
+	    }
+	    return error;
+	}
+
+	/**
+	 * Mean squared dB error of the current params against the target.
+	 */
+	double evaluate() {
+	    for (int p = 0; p < pickupCount; p++) {
+		int k = p * PARAMS;
+		bank.position[p] = params[k + POSITION];
+		bank.width[p] = params[k + WIDTH];
+		bank.level[p] = Pickup.levelOf(params[k + LEVEL]);
+		bank.polarity[p] = polarity[p];
+	    }
+	    int count = targetFreqs.length;
+	    model.responseAt(targetFreqs, amps, count);
+	    double sum = 0.0;
+	    for (int j = 0; j < count; j++) {
+		double db = 20.0 * ResponsePlot.oolog10 * Math.log(Math.abs(amps[j]));
+		if ((db < DB_FLOOR) || Double.isNaN(db)) {
+		    db = DB_FLOOR;
+		}
+		double d = db - targetDB[j];
+		sum += d * d;
+	    }
+	    return sum / count;
+	}
+    }
+}
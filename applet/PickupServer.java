@@ -0,0 +1,770 @@
+/**
+ * A small HTTP service that renders pickup responses without the applet,
+ * for tools that want plots or curve data.
+ *
+ *   java -Djava.awt.headless=true com.till.pickupplot.PickupServer -port 8080
+ *
+ * Requests, GET with a query string or POST with a JSON body:
+ *   /curve        the response as JSON: frequency, amplitude and dB at
+ *                 each point, plus the notches and peaks if asked for
+ *   /plot.png     the response plot
+ *   /guitar.png   the guitar display with the pickups
+ *   /stats        requests served, throughput and latency percentiles,
+ *                 and the curve cache's hits, misses and evictions
+ *
+ * Parameters:
+ *   scale, open              scale length, open string frequency
+ *   frets, fret              number of frets, played fret
+ *   fmin, fmax, points       frequency axis for /curve
+ *   features=true            find the notches and peaks: listed by
+ *                            /curve, marked on /plot.png (default false)
+ *   math=exact|fast          Math.sin, or FastTrig's tables
+ *   width, height            image size for the PNGs
+ *   pickup=position,width,level,polarity
+ *                            once per pickup; level in dB, polarity + or -
+ *   strings=standard|f,f,... each string's open frequency, to plot them
+ *                            all as the applet's strings view does
+ *   offsets=d,d,...          how much further from the bridge each string
+ *                            passes under the pickups, in inches (default
+ *                            0); the standard strings if none are given
+ *
+ * A JSON body uses the same names, with "pickups" an array of objects
+ * with "position", "width", "level" and "polarity", and "strings" and
+ * "offsets" arrays of numbers.
+ *
+ *   curl 'localhost:8080/plot.png?pickup=1.5,1,0,+&pickup=6,1,0,-' > plot.png
+ *
+ * Options:
+ *   -port n                     (default 8080)
+ *   -executor virtual|pool|n    a virtual thread per request if this JDK
+ *                               has them, else a cached pool; or n threads
+ *
+ * Every request gets its own model and images, and works out its strings
+ * on its own thread, so requests share nothing but the latency record
+ * and the curve cache.
+ */
+
+package com.till.pickupplot;
+
+import com.sun.net.httpserver.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+
+public class PickupServer implements HttpHandler {
+    static int MAX_POINTS = 8192;
+    static int MAX_IMAGE_SIZE = 4096;
+    static int MAX_PICKUPS = 64;
+    static int MAX_STRINGS = 16;
+    static int MAX_BODY = 1 << 16;
+    static int LATENCY_SAMPLES = 8192;	// the last this many requests
+    static Font FONT = new Font("Dialog", Font.PLAIN, 12);
+    static Font SMALL_FONT = new Font("Dialog", Font.PLAIN, 9);
+
+    HttpServer server;
+    ExecutorService executor;
+    String executorName;
+    long requestCount;
+    long errorCount;
+    long latencies[] = new long[LATENCY_SAMPLES];	// nanoseconds, a ring
+    long finishTimes[] = new long[LATENCY_SAMPLES];	// System.nanoTime
+
+    public static void main(String args[]) throws Exception {
+	int port = 8080;
+	String executorKind = "virtual";
+	try {
+	    for (int i = 0; i < args.length; i++) {
+		String opt = args[i];
+		if (i + 1 == args.length) {
+		    throw new IllegalArgumentException("missing value for " + opt);
+		}
+		String val = args[++i];
+		if (opt.equals("-port")) {
+		    port = Integer.parseInt(val);
+		} else if (opt.equals("-executor")) {
+		    executorKind = val;
+		} else {
+		    throw new IllegalArgumentException("unknown option " + opt);
+		}
+	    }
+	} catch (IllegalArgumentException e) {
+	    System.err.println("PickupServer: " + e.getMessage());
+	    System.exit(1);
+	}
+	System.setProperty("java.awt.headless", "true");
+	PickupServer s = new PickupServer();
+	s.start(port, executorKind);
+	System.err.println("PickupServer on http://localhost:" + port + "/ using " +
+			   s.executorName);
+    }
+
+    /**
+     * Start listening on localhost.
+     */
+    void start(int port, String executorKind) throws IOException {
+	executor = newExecutor(executorKind);
+	server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+	server.createContext("/", this);
+	server.setExecutor(executor);
+	server.start();
+    }
+
+    void stop() {
+	server.stop(0);
+	executor.shutdown();
+    }
+
+    /**
+     * Virtual threads came in with JDK 21, so they're looked up by name;
+     * on older JDKs "virtual" quietly becomes a cached thread pool.
+     */
+    ExecutorService newExecutor(String kind) {
+	if (kind.equals("virtual")) {
+	    try {
+		Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor", new Class<?>[0]);
+		ExecutorService e = (ExecutorService) m.invoke(null, new Object[0]);
+		executorName = "a virtual thread per request";
+		return e;
+	    } catch (Exception e) {
+		// not in this JDK, or a preview that isn't enabled
+	    }
+	    kind = "pool";
+	}
+	if (kind.equals("pool")) {
+	    executorName = "a cached thread pool";
+	    return Executors.newCachedThreadPool();
+	}
+	int n = Integer.parseInt(kind);
+	if (n < 1) {
+	    throw new IllegalArgumentException("bad executor " + kind);
+	}
+	executorName = n + " threads";
+	return Executors.newFixedThreadPool(n);
+    }
+
+    public void handle(HttpExchange ex) throws IOException {
+	long t0 = System.nanoTime();
+	String path = ex.getRequestURI().getPath();
+	boolean ok = false;
+	try {
+	    if (path.equals("/stats")) {
+		reply(ex, 200, "application/json", stats().getBytes("UTF-8"));
+		return;
+	    }
+	    Hashtable<String, Object> params = readParams(ex);
+	    GuitarModel m = newModel(params);
+	    if (path.equals("/curve")) {
+		reply(ex, 200, "application/json", curveJSON(m, params).getBytes("UTF-8"));
+	    } else if (path.equals("/plot.png")) {
+		Image plot = renderPlot(m, intParam(params, "width", 640, 64, MAX_IMAGE_SIZE),
+					intParam(params, "height", 200, 64, MAX_IMAGE_SIZE),
+					flag(params, "features"));
+		reply(ex, 200, "image/png", png(plot));
+	    } else if (path.equals("/guitar.png")) {
+		Image guitar = renderGuitar(m, intParam(params, "width", 600, 64, MAX_IMAGE_SIZE),
+					    intParam(params, "height", 100, 64, MAX_IMAGE_SIZE));
+		reply(ex, 200, "image/png", png(guitar));
+	    } else {
+		reply(ex, 404, "text/plain", ("no such thing: " + path + "\n").getBytes("UTF-8"));
+		return;
+	    }
+	    ok = true;
+	} catch (IllegalArgumentException e) {
+	    reply(ex, 400, "text/plain", (e.getMessage() + "\n").getBytes("UTF-8"));
+	} catch (RuntimeException e) {
+	    reply(ex, 500, "text/plain", (e + "\n").getBytes("UTF-8"));
+	} finally {
+	    ex.close();
+	    if (!path.equals("/stats")) {
+		record(System.nanoTime() - t0, ok);
+	    }
+	}
+    }
+
+    static void reply(HttpExchange ex, int status, String type, byte body[]) throws IOException {
+	ex.getResponseHeaders().set("Content-Type", type);
+	ex.sendResponseHeaders(status, body.length);
+	OutputStream out = ex.getResponseBody();
+	out.write(body);
+	out.close();
+    }
+
+    /**
+     * The request's parameters: the query string, then a JSON body on
+     * top.  Values are Strings or Doubles, except "pickups", which is a
+     * Vector of {position, width, level dB, polarity}.
+     */
+    static Hashtable<String, Object> readParams(HttpExchange ex) throws IOException {
+	Hashtable<String, Object> params = new Hashtable<String, Object>();
+	Vector<double[]> pickups = new Vector<double[]>();
+	String query = ex.getRequestURI().getRawQuery();
+	if (null != query) {
+	    StringTokenizer st = new StringTokenizer(query, "&");
+	    while (st.hasMoreTokens()) {
+		String pair = st.nextToken();
+		int eq = pair.indexOf('=');
+		String name = URLDecoder.decode((eq < 0) ? pair : pair.substring(0, eq), "UTF-8");
+		String value = (eq < 0) ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+		if (name.equals("pickup")) {
+		    pickups.addElement(parsePickup(value));
+		} else {
+		    params.put(name, value);
+		}
+	    }
+	}
+	if (ex.getRequestMethod().equals("POST")) {
+	    InputStream in = ex.getRequestBody();
+	    ByteArrayOutputStream body = new ByteArrayOutputStream();
+	    byte buf[] = new byte[4096];
+	    int n;
+	    while (0 < (n = in.read(buf))) {
+		body.write(buf, 0, n);
+		if (MAX_BODY < body.size()) {
+		    throw new IllegalArgumentException("body too large");
+		}
+	    }
+	    if (0 < body.size()) {
+		Object json = new Json(body.toString("UTF-8")).parse();
+		if (!(json instanceof Hashtable)) {
+		    throw new IllegalArgumentException("body isn't a JSON object");
+		}
+		Hashtable<?, ?> h = (Hashtable<?, ?>) json;
+		for (Enumeration<?> e = h.keys(); e.hasMoreElements(); ) {
+		    String name = (String) e.nextElement();
+		    if (!name.equals("pickups")) {
+			params.put(name, h.get(name));
+		    }
+		}
+		if (h.get("pickups") instanceof Vector) {
+		    Vector<?> v = (Vector<?>) h.get("pickups");
+		    for (int i = 0; i < v.size(); i++) {
+			if (!(v.elementAt(i) instanceof Hashtable)) {
+			    throw new IllegalArgumentException("bad pickup");
+			}
+			Hashtable<?, ?> p = (Hashtable<?, ?>) v.elementAt(i);
+			pickups.addElement(new double[] {
+			    number(p, "position", 1.0, 0.0, 100.0),
+			    number(p, "width", 1.0, 0.0, 10.0),
+			    number(p, "level", 0.0, -120.0, 40.0),
+			    polarity(p.get("polarity"))
+			});
+		    }
+		}
+	    }
+	}
+	if (MAX_PICKUPS < pickups.size()) {
+	    throw new IllegalArgumentException("too many pickups");
+	}
+	params.put("pickups", pickups);
+	return params;
+    }
+
+    /**
+     * "position,width,level,polarity", trailing ones optional.
+     */
+    static double[] parsePickup(String spec) {
+	double p[] = {1.0, 1.0, 0.0, +1};
+	StringTokenizer st = new StringTokenizer(spec, ",");
+	if (4 < st.countTokens()) {
+	    throw new IllegalArgumentException("bad pickup " + spec);
+	}
+	Hashtable<String, String> h = new Hashtable<String, String>();
+	String names[] = {"position", "width", "level", "polarity"};
+	for (int i = 0; st.hasMoreTokens(); i++) {
+	    h.put(names[i], st.nextToken().trim());
+	}
+	p[0] = number(h, "position", p[0], 0.0, 100.0);
+	p[1] = number(h, "width", p[1], 0.0, 10.0);
+	p[2] = number(h, "level", p[2], -120.0, 40.0);
+	p[3] = polarity(h.get("polarity"));
+	return p;
+    }
+
+    static double polarity(Object v) {
+	// an unescaped + in a query string arrives as a space, trimmed to ""
+	if ((null == v) || "+".equals(v) || "".equals(v) || "+1".equals(v) || "1".equals(v) ||
+	    Double.valueOf(1.0).equals(v)) {
+	    return +1;
+	}
+	if ("-".equals(v) || "-1".equals(v) || Double.valueOf(-1.0).equals(v)) {
+	    return -1;
+	}
+	throw new IllegalArgumentException("bad polarity " + v);
+    }
+
+    /**
+     * Parameter name as a number from min to max, or dflt if it's missing.
+     */
+    static double number(Hashtable<?, ?> params, String name, double dflt, double min, double max) {
+	Object v = params.get(name);
+	if (null == v) {
+	    return dflt;
+	}
+	double d;
+	try {
+	    d = (v instanceof Double) ? ((Double) v).doubleValue() : Double.parseDouble((String) v);
+	} catch (RuntimeException e) {
+	    throw new IllegalArgumentException("bad " + name + " " + v);
+	}
+	if (!((min <= d) && (d <= max))) {
+	    throw new IllegalArgumentException(name + " must be from " + min + " to " + max);
+	}
+	return d;
+    }
+
+    static int intParam(Hashtable<?, ?> params, String name, int dflt, int min, int max) {
+	return (int) Math.round(number(params, name, dflt, min, max));
+    }
+
+    /**
+     * Parameter name as true or false, false if it's missing.
+     */
+    static boolean flag(Hashtable<?, ?> params, String name) {
+	Object v = params.get(name);
+	if ((null == v) || Boolean.FALSE.equals(v) || "false".equals(v)) {
+	    return false;
+	}
+	if (Boolean.TRUE.equals(v) || "true".equals(v) || "".equals(v)) {
+	    return true;
+	}
+	throw new IllegalArgumentException("bad " + name + " " + v);
+    }
+
+    /**
+     * A model set up from the parameters, with one default pickup if
+     * none were given.
+     */
+    static GuitarModel newModel(Hashtable<?, ?> params) {
+	GuitarModel m = new GuitarModel();
+	m.scaleLength = number(params, "scale", m.scaleLength, 10.0, 100.0);
+	m.stringOpenFreq = number(params, "open", m.stringOpenFreq, 20.0, 10.0e3);
+	m.fretCount = intParam(params, "frets", m.fretCount, 0, 60);
+	m.playedFret = intParam(params, "fret", m.playedFret, 0, m.fretCount);
+	Object math = params.get("math");
+	if ((null != math) && !"exact".equals(math) && !"fast".equals(math)) {
+	    throw new IllegalArgumentException("bad math mode " + math);
+	}
+	m.fastMath = "fast".equals(math);
+	Vector<?> pickups = (Vector<?>) params.get("pickups");
+	for (int i = 0; i < pickups.size(); i++) {
+	    double spec[] = (double[]) pickups.elementAt(i);
+	    Pickup p = m.addPickup();
+	    p.position = spec[0];
+	    p.width = spec[1];
+	    p.setLevelDB(spec[2]);
+	    p.polarity = (int) spec[3];
+	}
+	if (0 == m.pickupCount()) {
+	    m.addPickup();
+	}
+	m.publishPickups();
+	m.strings = strings(params);
+	return m;
+    }
+
+    /**
+     * The string set the strings and offsets parameters ask for, or null.
+     */
+    static StringSet strings(Hashtable<?, ?> params) {
+	Object names = params.get("strings");
+	double open[] = numbers(params, "strings", 20.0, 10.0e3);
+	double offset[] = numbers(params, "offsets", -100.0, 100.0);
+	if ("standard".equals(names) || ((null == open) && (null != offset))) {
+	    open = StringSet.STANDARD.openFreq;
+	}
+	if (null == open) {
+	    return null;
+	}
+	if (null == offset) {
+	    offset = new double[open.length];
+	}
+	if ((0 == open.length) || (MAX_STRINGS < open.length)) {
+	    throw new IllegalArgumentException("strings must be 1 to " + MAX_STRINGS);
+	}
+	if (offset.length != open.length) {
+	    throw new IllegalArgumentException("need an offset for each string");
+	}
+	return new StringSet(open, offset);
+    }
+
+    /**
+     * Parameter name as a list of numbers from min to max: a comma 
+     * separated String, or a JSON array.  null if it's missing, or is
+     * "standard".
+     */
+    static double[] numbers(Hashtable<?, ?> params, String name, double min, double max) {
+	Object v = params.get(name);
+	if ((null == v) || "standard".equals(v)) {
+	    return null;
+	}
+	Hashtable<String, Object> h = new Hashtable<String, Object>();
+	Vector<Object> list = new Vector<Object>();
+	if (v instanceof Vector) {
+	    list.addAll((Vector<?>) v);
+	} else {
+	    StringTokenizer st = new StringTokenizer(v.toString(), ",");
+	    while (st.hasMoreTokens()) {
+		list.addElement(st.nextToken().trim());
+	    }
+	}
+	if (MAX_STRINGS < list.size()) {
+	    throw new IllegalArgumentException("too many " + name);
+	}
+	double d[] = new double[list.size()];
+	for (int i = 0; i < d.length; i++) {
+	    if (null == list.elementAt(i)) {
+		throw new IllegalArgumentException("bad " + name);
+	    }
+	    h.put(name, list.elementAt(i));
+	    d[i] = number(h, name, 0.0, min, max);
+	}
+	return d;
+    }
+
+    /**
+     * {"freq": [...], "amp": [...], "db": [...],
+     *  "notches": [{"freq": f, "db": d}, ...], "peaks": [...]}
+     *
+     * The notches and peaks are only there with features=true.
+     *
+     * With strings, each string's response follows on the same grid:
+     *  "strings": [{"open": f, "offset": d, "db": [...]}, ...]
+     */
+    static String curveJSON(GuitarModel m, Hashtable<?, ?> params) {
+	double fMin = number(params, "fmin", 20.0, 1.0, 1.0e6);
+	double fMax = number(params, "fmax", 20000.0, fMin, 1.0e6);
+	int points = intParam(params, "points", 256, 2, MAX_POINTS);
+	if (fMax <= fMin) {
+	    throw new IllegalArgumentException("fmax must be above fmin");
+	}
+	CurveCache.Entry e = CurveCache.shared.responseCurve(m, fMin, fMax, points, true);
+	double amps[] = e.amps;
+	StringBuffer sb = new StringBuffer(32 * points);
+	sb.append("{\"freq\": [");
+	for (int j = 0; j < points; j++) {
+	    sb.append((0 == j) ? "" : ", ");
+	    PickupSweep.appendFixed(sb, e.freqs[j], 3);
+	}
+	sb.append("],\n \"amp\": [");
+	for (int j = 0; j < points; j++) {
+	    sb.append((0 == j) ? "" : ", ").append(amps[j]);
+	}
+	sb.append("],\n \"db\": [");
+	for (int j = 0; j < points; j++) {
+	    sb.append((0 == j) ? "" : ", ");
+	    PickupSweep.appendFixed(sb, db(amps[j]), 2);
+	}
+	ResponseFeatures f = flag(params, "features") ? CurveCache.shared.features(e, m) : null;
+	for (int pass = 0; (null != f) && (pass < 2); pass++) {
+	    boolean notches = (0 == pass);
+	    sb.append(notches ? "],\n \"notches\": [" : "],\n \"peaks\": [");
+	    boolean first = true;
+	    for (int i = 0; i < f.count; i++) {
+		if (f.notch[i] == notches) {
+		    sb.append(first ? "{\"freq\": " : ", {\"freq\": ");
+		    PickupSweep.appendFixed(sb, f.freq[i], 3);
+		    sb.append(", \"db\": ");
+		    PickupSweep.appendFixed(sb, db(f.amp[i]), 2);
+		    sb.append('}');
+		    first = false;
+		}
+	    }
+	}
+	sb.append(']');
+	StringSet s = m.strings;
+	if (null != s) {
+	    double curves[][] = m.stringCurves(fMin, fMax, points, CurveCache.shared, true,
+					       WorkerGang.caller);
+	    sb.append(",\n \"strings\": [");
+	    for (int k = 0; k < s.count; k++) {
+		sb.append((0 == k) ? "{\"open\": " : ",\n  {\"open\": ");
+		PickupSweep.appendFixed(sb, s.openFreq[k], 3);
+		sb.append(", \"offset\": ").append(s.offset[k]).append(", \"db\": [");
+		for (int j = 0; j < points; j++) {
+		    sb.append((0 == j) ? "" : ", ");
+		    PickupSweep.appendFixed(sb, db(curves[k][j]), 2);
+		}
+		sb.append("]}");
+	    }
+	    sb.append(']');
+	}
+	sb.append("}\n");
+	return sb.toString();
+    }
+
+    static double db(double amp) {
+	double d = 20.0 * ResponsePlot.oolog10 * Math.log(Math.abs(amp));
+	return ((d < PickupSweep.DB_FLOOR) || Double.isNaN(d)) ? PickupSweep.DB_FLOOR : d;
+    }
+
+    /**
+     * The response plot as the applet draws it, with the envelope, the
+     * notch and peak marks, the note bar and the line cursor.
+     */
+    static Image renderPlot(GuitarModel m, int width, int height, boolean features) {
+	ResponsePlot plot = new ResponsePlot();
+	plot.setFont(FONT);
+	plot.annotate = features;
+	plot.reshape(0, 0, width, height);
+	plot.setBar(m.stringOpenFreq, m.fretCount);
+	plot.setLineCursor(m.fretFreq());
+	int count = plot.getPlotPointCount();
+	if (null != m.strings) {
+	    int n = m.strings.count;
+	    double curves[][] = m.stringCurves(plot.fMin, plot.fMax, count, 
+					       CurveCache.shared, true, WorkerGang.caller);
+	    plot.plotStrings(m.stringFreqs, curves, n, m.stringAverage(curves, n, count), count);
+	    return paint(plot, width, height);
+	}
+	CurveCache.Entry e = CurveCache.shared.responseEnvelope(m, plot.fMin, plot.fMax, count,
+								plot.floorAmp(), true);
+	plot.plotCurve(e.freqs, e.amps, e.ampMin, e.ampMax, count, 
+		       plot.annotate ? CurveCache.shared.features(e, m) : null);
+	return paint(plot, width, height);
+    }
+
+    static Image renderGuitar(GuitarModel m, int width, int height) {
+	GuitarDisplay d = new GuitarDisplay(null, m);
+	d.setFont(FONT);
+	d.smallFont = SMALL_FONT;
+	d.setBackground(Color.white);
+	d.reshape(0, 0, width, height);
+	return paint(d, width, height);
+    }
+
+    static Image paint(Component c, int width, int height) {
+	BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	Graphics g = image.getGraphics();
+	g.setFont(c.getFont());
+	c.paint(g);
+	g.dispose();
+	return image;
+    }
+
+    static byte[] png(Image image) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 15);
+	ImageIO.write((BufferedImage) image, "png", out);
+	return out.toByteArray();
+    }
+
+    synchronized void record(long nanos, boolean ok) {
+	int i = (int) (requestCount % LATENCY_SAMPLES);
+	latencies[i] = nanos;
+	finishTimes[i] = System.nanoTime();
+	requestCount++;
+	if (!ok) {
+	    errorCount++;
+	}
+    }
+
+    /**
+     * Throughput and latency over the last LATENCY_SAMPLES requests.
+     */
+    synchronized String stats() {
+	int n = (int) Math.min(requestCount, LATENCY_SAMPLES);
+	long sorted[] = new long[n];
+	System.arraycopy(latencies, 0, sorted, 0, n);
+	Arrays.sort(sorted);
+	long first = Long.MAX_VALUE;
+	long last = Long.MIN_VALUE;
+	for (int i = 0; i < n; i++) {
+	    first = Math.min(first, finishTimes[i]);
+	    last = Math.max(last, finishTimes[i]);
+	}
+	double throughput = (1 < n) ? (n - 1) * 1.0e9 / Math.max(1, last - first) : 0.0;
+	StringBuffer sb = new StringBuffer();
+	sb.append("{\"requests\": ").append(requestCount);
+	sb.append(", \"errors\": ").append(errorCount);
+	sb.append(", \"executor\": \"").append(executorName).append('"');
+	sb.append(", \"window\": ").append(n);
+	sb.append(", \"throughput\": ");
+	PickupSweep.appendFixed(sb, throughput, 1);
+	sb.append(", \"p50_ms\": ");
+	PickupSweep.appendFixed(sb, percentile(sorted, n, 0.50) / 1.0e6, 3);
+	sb.append(", \"p99_ms\": ");
+	PickupSweep.appendFixed(sb, percentile(sorted, n, 0.99) / 1.0e6, 3);
+	sb.append(", \"max_ms\": ");
+	PickupSweep.appendFixed(sb, percentile(sorted, n, 1.0) / 1.0e6, 3);
+	CurveCache cache = CurveCache.shared;
+	synchronized (cache) {
+	    sb.append(", \"cache_hits\": ").append(cache.hits);
+	    sb.append(", \"cache_misses\": ").append(cache.misses);
+	    sb.append(", \"cache_evictions\": ").append(cache.evictions);
+	    sb.append(", \"cache_bytes\": ").append(cache.bytes);
+	}
+	sb.append("}\n");
+	return sb.toString();
+    }
+
+    /**
+     * The p'th quantile of the first n sorted values, nearest rank.
+     */
+    static long percentile(long sorted[], int n, double p) {
+	if (0 == n) {
+	    return 0;
+	}
+	int rank = (int) Math.ceil(p * n);
+	return sorted[Math.max(0, Math.min(n - 1, rank - 1))];
+    }
+
+    /**
+     * Just enough JSON for request bodies: objects become Hashtables,
+     * arrays Vectors, numbers Doubles, and true, false and null Booleans
+     * and null.  Objects and arrays nest at most MAX_DEPTH deep, so a
+     * hostile body can't run the parser out of stack.
+     */
+    static class Json {
+	static int MAX_DEPTH = 32;
+
+	String s;
+	int pos;
+	int depth;		// objects and arrays we're inside
+
+	Json(String s) {
+	    this.s = s;
+	}
+
+	Object parse() {
+	    Object v = value();
+	    skipSpace();
+	    if (pos != s.length()) {
+		throw error();
+	    }
+	    return v;
+	}
+
+	Object value() {
+	    skipSpace();
+	    if (s.length() <= pos) {
+		throw error();
+	    }
+	    char c = s.charAt(pos);
+	    if ((('{' == c) || ('[' == c)) && (MAX_DEPTH == depth)) {
+		throw new IllegalArgumentException("JSON nested more than " + MAX_DEPTH + " deep");
+	    }
+	    if ('{' == c) {
+		Hashtable<String, Object> h = new Hashtable<String, Object>();
+		pos++;
+		depth++;
+		if (!next('}')) {
+		    do {
+			skipSpace();
+			if ((s.length() <= pos) || ('"' != s.charAt(pos))) {
+			    throw error();
+			}
+			String name = string();
+			if (!next(':')) {
+			    throw error();
+			}
+			Object v = value();
+			if (null != v) {
+			    h.put(name, v);
+			}
+		    } while (next(','));
+		    if (!next('}')) {
+			throw error();
+		    }
+		}
+		depth--;
+		return h;
+	    } else if ('[' == c) {
+		Vector<Object> v = new Vector<Object>();
+		pos++;
+		depth++;
+		if (!next(']')) {
+		    do {
+			v.addElement(value());
+		    } while (next(','));
+		    if (!next(']')) {
+			throw error();
+		    }
+		}
+		depth--;
+		return v;
+	    } else if ('"' == c) {
+		return string();
+	    } else if (s.startsWith("true", pos)) {
+		pos += 4;
+		return Boolean.TRUE;
+	    } else if (s.startsWith("false", pos)) {
+		pos += 5;
+		return Boolean.FALSE;
+	    } else if (s.startsWith("null", pos)) {
+		pos += 4;
+		return null;
+	    }
+	    int start = pos;
+	    while ((pos < s.length()) && (0 <= "+-0123456789.eE".indexOf(s.charAt(pos)))) {
+		pos++;
+	    }
+	    try {
+		return Double.valueOf(s.substring(start, pos));
+	    } catch (NumberFormatException e) {
+		throw error();
+	    }
+	}
+
+	String string() {
+	    StringBuffer sb = new StringBuffer();
+	    pos++;
+	    while (true) {
+		if (s.length() <= pos) {
+		    throw error();
+		}
+		char c = s.charAt(pos++);
+		if ('"' == c) {
+		    return sb.toString();
+		}
+		if ('\\' == c) {
+		    if (s.length() <= pos) {
+			throw error();
+		    }
+		    c = s.charAt(pos++);
+		    switch (c) {
+		    case 'n': c = '\n'; break;
+		    case 't': c = '\t'; break;
+		    case 'r': c = '\r'; break;
+		    case 'b': c = '\b'; break;
+		    case 'f': c = '\f'; break;
+		    case 'u':
+			if (s.length() < pos + 4) {
+			    throw error();
+			}
+			try {
+			    c = (char) Integer.parseInt(s.substring(pos, pos + 4), 16);
+			} catch (NumberFormatException e) {
+			    throw error();
+			}
+			pos += 4;
+			break;
+		    }
+		}
+		sb.append(c);
+	    }
+	}
+
+	boolean next(char c) {
+	    skipSpace();
+	    if ((pos < s.length()) && (c == s.charAt(pos))) {
+		pos++;
+		return true;
+	    }
+	    return false;
+	}
+
+	void skipSpace() {
+	    while ((pos < s.length()) && Character.isWhitespace(s.charAt(pos))) {
+		pos++;
+	    }
+	}
+
+	IllegalArgumentException error() {
+	    return new IllegalArgumentException("bad JSON at character " + pos);
+	}
+    }
+}
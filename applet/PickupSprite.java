@@ -0,0 +1,74 @@
+/**
+ * A pickup as GuitarDisplay last drew it.  The body is rendered once 
+ * into an image, and the position label is formatted and measured once
+ * per position; both are only redone when something they depend on 
+ * changes.
+ */
+
+package com.till.pickupplot;
+
+import java.awt.*;
+import java.awt.image.*;
+
+class PickupSprite {
+    Image body;
+    int bodyWidth;		// pixels, as drawRoundRect takes them
+    int bodyHeight;
+    Color color;
+    double position = Double.NaN;	// the label's
+    String label;
+    int labelWidth;
+    int x;
+    Rectangle bounds;		// the body and the label, null until laid out
+    int frame;			// the last GuitarDisplay frame it was in
+
+    /**
+     * Bring this up to date with pickup p on display d.  Returns true if
+     * it looks any different now.
+     */
+    boolean update(Pickup p, GuitarDisplay d, FontMetrics fm) {
+	boolean changed = false;
+	// the fields take any number; draw at least a pixel either way
+	double width = Math.abs(p.width);
+	int widthP = Math.max(1, (int) Math.round(width * d.ppi));
+	int heightP = Math.max(1, (int) Math.round(Math.abs(p.height) * d.ppi));
+	if ((null == body) || (widthP != bodyWidth) || (heightP != bodyHeight) || 
+	    (p.color != color)) {
+	    bodyWidth = widthP;
+	    bodyHeight = heightP;
+	    color = p.color;
+	    body = new BufferedImage(widthP + 1, heightP + 1, BufferedImage.TYPE_INT_ARGB);
+	    Graphics g = body.getGraphics();
+	    g.setColor(color);
+	    g.fillRoundRect(0, 0, widthP, heightP, 10, 10);
+	    g.setColor(Color.black);
+	    g.drawRoundRect(0, 0, widthP, heightP, 10, 10);
+	    g.dispose();
+	    changed = true;
+	}
+	if (p.position != position) {
+	    position = p.position;
+	    label = GuitarDisplay.df23.format(position);
+	    labelWidth = fm.stringWidth(label);
+	    changed = true;
+	}
+	int xP = d.bridgeX - (int) Math.round(d.ppi * (p.position + 0.5 * width));
+	if (changed || (xP != x) || (null == bounds)) {
+	    x = xP;
+	    int labelX = x + (bodyWidth - labelWidth) / 2;
+	    int baseline = GuitarDisplay.PICKUP_TOP + bodyHeight + fm.getHeight();
+	    bounds = new Rectangle(x, GuitarDisplay.PICKUP_TOP, bodyWidth + 1, bodyHeight + 1);
+	    bounds = bounds.union(new Rectangle(labelX, baseline - fm.getMaxAscent(),
+						labelWidth + 1, fm.getMaxAscent() + fm.getMaxDescent()));
+	    changed = true;
+	}
+	return changed;
+    }
+
+    void draw(Graphics g, FontMetrics fm) {
+	g.drawImage(body, x, GuitarDisplay.PICKUP_TOP, null);
+	g.setColor(Color.black);
+	g.drawString(label, x + (bodyWidth - labelWidth) / 2, 
+		     GuitarDisplay.PICKUP_TOP + bodyHeight + fm.getHeight());
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * Headless parameter sweep over pickup layouts.
+ *
+ * Builds every combination of position, width, level and polarity for
+ * a number of pickups, evaluates the response of each layout over a
+ * log spaced frequency axis, and writes one CSV row per layout.
+ *
+ *   java com.till.pickupplot.PickupSweep -pickups 3 -position 1:6:0.25
+ *       -width 0.5:1.5:0.5 -polarity +- -out sweep.csv
+ *
+ * Options:
+ *   -pickups n          number of pickups (default 3)
+ *   -position spec      pickup positions in inches from the bridge
+ *   -width spec         pickup widths in inches
+ *   -level spec         pickup levels in dB
+ *   -polarity +|-|+-    polarities to try
+ *   -scale inches       scale length (default 25.5)
+ *   -open hz            open string frequency (default 110)
+ *   -fmin hz -fmax hz   frequency axis limits (default 20 to 20K)
+ *   -points n           frequencies on the axis (default 256, at most
+ *                       MAX_POINTS)
+ *   -math exact|fast    Math.sin, or FastTrig's bounded error tables
+ *   -out file           CSV output, default is stdout
+ *
+ * A spec is a single value, a comma separated list, or min:max:step,
+ * with at most MAX_VALUES values.
+ *
+ * Layouts are evaluated a block at a time on a fork-join pool while the
+ * previous block is written out, so memory use doesn't grow with the
+ * size of the sweep.
+ */
+
+package com.till.pickupplot;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class PickupSweep {
+    static int BLOCK_SIZE = 2048;	// layouts per block
+    static int LEAF_SIZE = 32;		// layouts per fork-join task
+    static double DB_FLOOR = -120.0;
+    static int MAX_POINTS = 4096;	// a block's dB is BLOCK_SIZE * points
+    static int MAX_VALUES = 10000;	// in one spec
+
+    int pickupCount = 3;
+    double positions[] = {1.0, 2.0, 3.0, 4.0, 5.0, 6.0};
+    double widths[] = {1.0};
+    double levels[] = {0.0};
+    int polarities[] = {+1, -1};
+    double scaleLength = 25.5;
+    double stringOpenFreq = 110.0;
+    double fMin = 20.0;
+    double fMax = 20000.0;
+    int points = 256;
+    boolean fastMath = false;
+    String outName;
+
+    double freqs[];
+    int choiceCount;		// choices for one pickup
+    long layoutCount;		// choiceCount ^ pickupCount
+
+    public static void main(String args[]) throws Exception {
+	PickupSweep sweep = new PickupSweep();
+	try {
+	    sweep.parseArgs(args);
+	} catch (IllegalArgumentException e) {
+	    System.err.println("PickupSweep: " + e.getMessage());
+	    System.exit(1);
+	}
+	Writer out = (null == sweep.outName)
+	    ? new OutputStreamWriter(System.out)
+	    : new FileWriter(sweep.outName);
+	out = new BufferedWriter(out, 1 << 16);
+	long start = System.currentTimeMillis();
+	sweep.run(out, ForkJoinPool.commonPool());
+	out.flush();
+	if (null != sweep.outName) {
+	    out.close();
+	}
+	long ms = System.currentTimeMillis() - start;
+	System.err.println(sweep.layoutCount + " layouts in " + ms + " ms on " +
+			   ForkJoinPool.commonPool().getParallelism() + " threads");
+    }
+
+    void parseArgs(String args[]) {
+	for (int i = 0; i < args.length; i++) {
+	    String opt = args[i];
+	    if (i + 1 == args.length) {
+		throw new IllegalArgumentException("missing value for " + opt);
+	    }
+	    String val = args[++i];
+	    if (opt.equals("-pickups")) {
+		pickupCount = Integer.parseInt(val);
+	    } else if (opt.equals("-position")) {
+		positions = parseSpec(val);
+	    } else if (opt.equals("-width")) {
+		widths = parseSpec(val);
+	    } else if (opt.equals("-level")) {
+		levels = parseSpec(val);
+	    } else if (opt.equals("-polarity")) {
+		polarities = parsePolarity(val);
+	    } else if (opt.equals("-scale")) {
+		scaleLength = Double.parseDouble(val);
+	    } else if (opt.equals("-open")) {
+		stringOpenFreq = Double.parseDouble(val);
+	    } else if (opt.equals("-fmin")) {
+		fMin = Double.parseDouble(val);
+	    } else if (opt.equals("-fmax")) {
+		fMax = Double.parseDouble(val);
+	    } else if (opt.equals("-points")) {
+		points = Integer.parseInt(val);
+	    } else if (opt.equals("-math")) {
+		if (!val.equals("exact") && !val.equals("fast")) {
+		    throw new IllegalArgumentException("bad math mode " + val);
+		}
+		fastMath = val.equals("fast");
+	    } else if (opt.equals("-out")) {
+		outName = val;
+	    } else {
+		throw new IllegalArgumentException("unknown option " + opt);
+	    }
+	}
+	if ((pickupCount < 1) || (points < 2) || (MAX_POINTS < points) ||
+	    !(0.0 < fMin) || !(fMin < fMax)) {
+	    throw new IllegalArgumentException("bad pickup count or frequency axis");
+	}
+	choiceCount = positions.length * widths.length * levels.length * polarities.length;
+	layoutCount = 1;
+	for (int i = 0; i < pickupCount; i++) {
+	    if (Long.MAX_VALUE / choiceCount < layoutCount) {
+		throw new IllegalArgumentException("sweep too large");
+	    }
+	    layoutCount *= choiceCount;
+	}
+    }
+
+    /**
+     * A single value, a list "a,b,c", or a range "min:max:step".
+     */
+    static double[] parseSpec(String spec) {
+	if (0 <= spec.indexOf(':')) {
+	    StringTokenizer st = new StringTokenizer(spec, ":");
+	    int tokens = st.countTokens();
+	    if ((tokens < 2) || (3 < tokens)) {
+		throw new IllegalArgumentException("bad range " + spec);
+	    }
+	    double min = Double.parseDouble(st.nextToken());
+	    double max = Double.parseDouble(st.nextToken());
+	    double step = st.hasMoreTokens() ? Double.parseDouble(st.nextToken()) : 1.0;
+	    if (!(0.0 < step) || !(min <= max) || (MAX_VALUES <= (max - min) / step)) {
+		throw new IllegalArgumentException("bad range " + spec);
+	    }
+	    // a little slop so the max is included despite rounding
+	    int n = (int) Math.floor((max - min) / step + 1.0e-9) + 1;
+	    double vals[] = new double[n];
+	    for (int i = 0; i < n; i++) {
+		vals[i] = min + i * step;
+	    }
+	    return vals;
+	}
+	StringTokenizer st = new StringTokenizer(spec, ",");
+	if ((0 == st.countTokens()) || (MAX_VALUES < st.countTokens())) {
+	    throw new IllegalArgumentException("bad list " + spec);
+	}
+	double vals[] = new double[st.countTokens()];
+	for (int i = 0; i < vals.length; i++) {
+	    vals[i] = Double.parseDouble(st.nextToken());
+	}
+	return vals;
+    }
+
+    static int[] parsePolarity(String spec) {
+	if (spec.equals("+")) {
+	    return new int[] {+1};
+	} else if (spec.equals("-")) {
+	    return new int[] {-1};
+	} else if (spec.equals("+-") || spec.equals("-+")) {
+	    return new int[] {+1, -1};
+	}
+	throw new IllegalArgumentException("bad polarity " + spec);
+    }
+
+    /**
+     * Log spaced frequency axis, the same spacing the plot uses.
+     */
+    static double[] logAxis(double fMin, double fMax, int count) {
+	double axis[] = new double[count];
+	double freq = fMin;
+	double r = Math.exp(Math.log(fMax / fMin) / (count - 1));
+	for (int i = 0; i < count; i++) {
+	    axis[i] = freq;
+	    freq *= r;
+	}
+	return axis;
+    }
+
+    void run(Writer out, ForkJoinPool pool) throws IOException {
+	freqs = logAxis(fMin, fMax, points);
+	writeHeader(out);
+
+	// two blocks: one being computed while the other is written
+	Block current = new Block();
+	Block next = new Block();
+	long first = 0;
+	current.set(first);
+	Future<?> pending = pool.submit(current.task());
+	while (first < layoutCount) {
+	    long nextFirst = first + BLOCK_SIZE;
+	    try {
+		pending.get();
+	    } catch (InterruptedException e) {
+		throw new InterruptedIOException();
+	    } catch (ExecutionException e) {
+		throw new RuntimeException(e.getCause());
+	    }
+	    if (nextFirst < layoutCount) {
+		next.set(nextFirst);
+		pending = pool.submit(next.task());
+	    }
+	    current.write(out);
+	    Block t = current;
+	    current = next;
+	    next = t;
+	    first = nextFirst;
+	}
+    }
+
+    void writeHeader(Writer out) throws IOException {
+	StringBuffer sb = new StringBuffer();
+	sb.append("layout");
+	for (int p = 1; p <= pickupCount; p++) {
+	    sb.append(",p").append(p).append("_position");
+	    sb.append(",p").append(p).append("_width");
+	    sb.append(",p").append(p).append("_level_db");
+	    sb.append(",p").append(p).append("_polarity");
+	}
+	for (int j = 0; j < points; j++) {
+	    sb.append(",");
+	    appendFixed(sb, freqs[j], 2);
+	}
+	sb.append('\n');
+	out.write(sb.toString());
+    }
+
+    /**
+     * Set up the pickups for layout number n, leaving the level choices
+     * (in dB) in levelsDB.  The choices for pickup 1 vary fastest.
+     */
+    void configure(PickupBank bank, double levelsDB[], long n) {
+	for (int p = 0; p < pickupCount; p++) {
+	    int choice = (int) (n % choiceCount);
+	    n /= choiceCount;
+	    bank.polarity[p] = polarities[choice % polarities.length];
+	    choice /= polarities.length;
+	    levelsDB[p] = levels[choice % levels.length];
+	    bank.level[p] = Pickup.levelOf(levelsDB[p]);
+	    choice /= levels.length;
+	    bank.width[p] = widths[choice % widths.length];
+	    choice /= widths.length;
+	    bank.position[p] = positions[choice];
+	}
+    }
+
+    /**
+     * A model with a bank of its own, for configure to change in place.
+     */
+    GuitarModel newModel() {
+	GuitarModel m = new GuitarModel();
+	m.scaleLength = scaleLength;
+	m.stringOpenFreq = stringOpenFreq;
+	m.fastMath = fastMath;
+	m.bank = new PickupBank(pickupCount);
+	return m;
+    }
+
+    /**
+     * Append v with a fixed number of decimals, without going through
+     * Double.toString.
+     */
+    static void appendFixed(StringBuffer sb, double v, int decimals) {
+	if (v < 0.0) {
+	    sb.append('-');
+	    v = -v;
+	}
+	long scale = 1;
+	for (int i = 0; i < decimals; i++) {
+	    scale *= 10;
+	}
+	long n = Math.round(v * scale);
+	sb.append(n / scale);
+	if (0 < decimals) {
+	    sb.append('.');
+	    long frac = n % scale;
+	    for (long s = scale / 10; 0 < s; s /= 10) {
+		sb.append((char) ('0' + (frac / s) % 10));
+	    }
+	}
+    }
+
+    /**
+     * A block of consecutive layouts and their responses in dB.
+     */
+    class Block {
+	long first;
+	int count;
+	double db[] = new double[BLOCK_SIZE * points];
+	StringBuffer sb = new StringBuffer();
+
+	void set(long first) {
+	    this.first = first;
+	    count = (int) Math.min(BLOCK_SIZE, layoutCount - first);
+	}
+
+	RecursiveAction task() {
+	    return new Evaluate(0, count);
+	}
+
+	/**
+	 * Evaluate layouts [lo, hi) of this block, splitting until the
+	 * pieces are small.
+	 */
+	class Evaluate extends RecursiveAction {
+	    static final long serialVersionUID = 1L;
+
+	    int lo;
+	    int hi;
+
+	    Evaluate(int lo, int hi) {
+		this.lo = lo;
+		this.hi = hi;
+	    }
+
+	    protected void compute() {
+		if (hi - lo <= LEAF_SIZE) {
+		    GuitarModel m = newModel();
+		    double amps[] = new double[points];
+		    double levelsDB[] = new double[pickupCount];
+		    for (int i = lo; i < hi; i++) {
+			configure(m.bank, levelsDB, first + i);
+			m.responseAt(freqs, amps, points);
+			int base = i * points;
+			for (int j = 0; j < points; j++) {
+			    double a = Math.abs(amps[j]);
+			    double d = 20.0 * ResponsePlot.oolog10 * Math.log(a);
+			    db[base + j] = (d < DB_FLOOR) || Double.isNaN(d) ? DB_FLOOR : d;
+			}
+		    }
+		} else {
+		    int mid = (lo + hi) >>> 1;
+		    invokeAll(new Evaluate(lo, mid), new Evaluate(mid, hi));
+		}
+	    }
+	}
+
+	void write(Writer out) throws IOException {
+	    PickupBank bank = new PickupBank(pickupCount);
+	    double levelsDB[] = new double[pickupCount];
+	    for (int i = 0; i < count; i++) {
+		sb.setLength(0);
+		configure(bank, levelsDB, first + i);
+		sb.append(first + i);
+		for (int p = 0; p < pickupCount; p++) {
+		    sb.append(',');
+		    appendFixed(sb, bank.position[p], 3);
+		    sb.append(',');
+		    appendFixed(sb, bank.width[p], 3);
+		    sb.append(',');
+		    appendFixed(sb, levelsDB[p], 2);
+		    sb.append(',');
+		    sb.append(0 < bank.polarity[p] ? '+' : '-');
+		}
+		int base = i * points;
+		for (int j = 0; j < points; j++) {
+		    sb.append(',');
+		    appendFixed(sb, db[base + j], 2);
+		}
+		sb.append('\n');
+		out.write(sb.toString());
+	    }
+	}
+    }
+}
@@ -0,0 +1,414 @@
+/**
+ * Offline synthesis of the modeled string, heard through the pickups.
+ *
+ * The string is plucked at the played fret and rings as a sum of its
+ * modes.  Each mode's starting amplitude comes from the pluck shape, and
+ * it is weighted by the pickups' response at its frequency
+ * (GuitarModel.responseAt) and by the frequency itself, since a
+ * magnetic pickup follows the string's velocity.  Each mode dies away
+ * with its own decay time, shorter for the higher ones.  The result goes
+ * to a 16 or 24 bit mono WAV file.
+ *
+ *   java com.till.pickupplot.PickupSynth -pickup 1.5,1,0,+ -pickup 6,1,0,-
+ *       -fret 5 -seconds 4 -out neck_and_bridge.wav
+ *
+ * Options:
+ *   -pickup pos,width,level,polarity
+ *                       once per pickup, as in PickupServer (default one
+ *                       pickup at 1.5 inches)
+ *   -scale inches       scale length (default 25.5)
+ *   -open hz            open string frequency (default 110)
+ *   -fret n             played fret (default 0)
+ *   -pluck inches       where the string is plucked, from the bridge
+ *                       (default 5)
+ *   -decay s            time for the fundamental to fall 60 dB (default 3)
+ *   -damping hz         the frequency whose decay time is half the
+ *                       fundamental's (default 2000)
+ *   -seconds s          length of the render (default 3)
+ *   -every s            pluck again this often; 0 for once (default 0)
+ *   -rate hz            sample rate (default 44100)
+ *   -bits 16|24         sample size (default 16)
+ *   -math exact|fast    Math.sin, or FastTrig's tables, for the weights
+ *   -out file           WAV output, default is stdout
+ *   -batch file         render many: each line of the file holds more of
+ *                       these options (with its own -out), on top of the
+ *                       ones given here
+ *
+ * Rendering goes a block of BLOCK_SIZE samples at a time into buffers
+ * made once, so nothing is allocated per sample and a long render takes
+ * no more memory than a short one.  A mode is a damped rotation, so each
+ * sample costs four multiplies per mode, and modes are dropped once
+ * they're below the last bit of the output.  The batch renders run in
+ * parallel on the fork-join pool.  Each render's real time factor
+ * (seconds of audio per second of work) goes to stderr.
+ */
+
+package com.till.pickupplot;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class PickupSynth {
+    static int BLOCK_SIZE = 1024;	// samples
+    static double TOP_MODE = 0.45;	// of the sample rate
+    static double HEADROOM = 0.9;	// of full scale, for the loudest possible peak
+
+    Vector<double[]> pickups = new Vector<double[]>();	// double[4] each, from parsePickup
+    double scaleLength = 25.5;
+    double stringOpenFreq = 110.0;
+    int playedFret = 0;
+    double pluckPosition = 5.0;
+    double decay = 3.0;
+    double damping = 2000.0;
+    double seconds = 3.0;
+    double every = 0.0;
+    int sampleRate = 44100;
+    int bits = 16;
+    boolean fastMath = false;
+    String outName;
+    String batchName;
+
+    // the modes by number: starting amplitude, and per sample rotation
+    // and decay (modeCos, modeSin)
+    int modeCount;
+    double start[];
+    double modeCos[];
+    double modeSin[];
+
+    // the modes as they're being rendered: state (re, im) and rotation,
+    // with the first activeCount still sounding
+    int activeCount;
+    double re[];
+    double im[];
+    double cosW[];
+    double sinW[];
+    double gain;		// to full scale
+    double silence;		// a mode's squared amplitude below this is dropped
+    double block[] = new double[BLOCK_SIZE];
+
+    double realTimeFactor;
+
+    public static void main(String args[]) throws Exception {
+	PickupSynth synth = new PickupSynth();
+	try {
+	    synth.parseArgs(args);
+	} catch (IllegalArgumentException e) {
+	    System.err.println("PickupSynth: " + e.getMessage());
+	    System.exit(1);
+	}
+	if (null == synth.batchName) {
+	    try {
+		synth.render();
+	    } catch (IllegalArgumentException e) {
+		System.err.println("PickupSynth: " + e.getMessage());
+		System.exit(1);
+	    }
+	    System.err.println(synth.report());
+	    return;
+	}
+	Vector<PickupSynth> jobs;
+	try {
+	    jobs = readBatch(synth.batchName, args);
+	} catch (IllegalArgumentException e) {
+	    System.err.println("PickupSynth: " + e.getMessage());
+	    System.exit(1);
+	    return;
+	}
+	renderAll(jobs, ForkJoinPool.commonPool());
+    }
+
+    void parseArgs(String args[]) {
+	boolean newPickups = true;
+	for (int i = 0; i < args.length; i++) {
+	    String opt = args[i];
+	    if (i + 1 == args.length) {
+		throw new IllegalArgumentException("missing value for " + opt);
+	    }
+	    String val = args[++i];
+	    if (opt.equals("-pickup")) {
+		// pickups given here replace any given before
+		if (newPickups) {
+		    pickups = new Vector<double[]>();
+		    newPickups = false;
+		}
+		pickups.addElement(PickupServer.parsePickup(val));
+	    } else if (opt.equals("-scale")) {
+		scaleLength = Double.parseDouble(val);
+	    } else if (opt.equals("-open")) {
+		stringOpenFreq = Double.parseDouble(val);
+	    } else if (opt.equals("-fret")) {
+		playedFret = Integer.parseInt(val);
+	    } else if (opt.equals("-pluck")) {
+		pluckPosition = Double.parseDouble(val);
+	    } else if (opt.equals("-decay")) {
+		decay = Double.parseDouble(val);
+	    } else if (opt.equals("-damping")) {
+		damping = Double.parseDouble(val);
+	    } else if (opt.equals("-seconds")) {
+		seconds = Double.parseDouble(val);
+	    } else if (opt.equals("-every")) {
+		every = Double.parseDouble(val);
+	    } else if (opt.equals("-rate")) {
+		sampleRate = Integer.parseInt(val);
+	    } else if (opt.equals("-bits")) {
+		bits = Integer.parseInt(val);
+	    } else if (opt.equals("-math")) {
+		if (!val.equals("exact") && !val.equals("fast")) {
+		    throw new IllegalArgumentException("bad math mode " + val);
+		}
+		fastMath = val.equals("fast");
+	    } else if (opt.equals("-out")) {
+		outName = val;
+	    } else if (opt.equals("-batch")) {
+		batchName = val;
+	    } else {
+		throw new IllegalArgumentException("unknown option " + opt);
+	    }
+	}
+	if ((16 != bits) && (24 != bits)) {
+	    throw new IllegalArgumentException("bits must be 16 or 24");
+	}
+	if ((sampleRate < 8000) || (seconds <= 0.0) || (decay <= 0.0) ||
+	    (damping <= 0.0) || (every < 0.0) || (playedFret < 0) || (60 < playedFret)) {
+	    throw new IllegalArgumentException("bad rate, seconds, decay, damping, every or fret");
+	}
+    }
+
+    /**
+     * One synth per line of the batch file, each set up from args and
+     * then from its line.  Blank lines and lines starting with # are
+     * skipped.
+     */
+    static Vector<PickupSynth> readBatch(String name, String args[]) throws IOException {
+	Vector<PickupSynth> jobs = new Vector<PickupSynth>();
+	BufferedReader in = new BufferedReader(new FileReader(name));
+	String line;
+	int lineNumber = 0;
+	while (null != (line = in.readLine())) {
+	    lineNumber++;
+	    line = line.trim();
+	    if ((0 == line.length()) || line.startsWith("#")) {
+		continue;
+	    }
+	    StringTokenizer st = new StringTokenizer(line);
+	    String lineArgs[] = new String[st.countTokens()];
+	    for (int i = 0; i < lineArgs.length; i++) {
+		lineArgs[i] = st.nextToken();
+	    }
+	    PickupSynth synth = new PickupSynth();
+	    try {
+		synth.parseArgs(args);
+		synth.parseArgs(lineArgs);
+	    } catch (IllegalArgumentException e) {
+		throw new IllegalArgumentException(name + " line " + lineNumber + ": " +
+						   e.getMessage());
+	    }
+	    if (null == synth.outName) {
+		throw new IllegalArgumentException(name + " line " + lineNumber + ": no -out");
+	    }
+	    jobs.addElement(synth);
+	}
+	in.close();
+	return jobs;
+    }
+
+    /**
+     * Render all the jobs on pool, and report each as it finishes and
+     * the whole batch at the end.
+     */
+    static void renderAll(Vector<PickupSynth> jobs, ForkJoinPool pool) throws IOException {
+	long t0 = System.nanoTime();
+	int count = jobs.size();
+	Future<?> futures[] = new Future<?>[count];
+	for (int i = 0; i < count; i++) {
+	    final PickupSynth synth = jobs.elementAt(i);
+	    futures[i] = pool.submit(new Callable<PickupSynth>() {
+		public PickupSynth call() throws IOException {
+		    synth.render();
+		    return synth;
+		}
+	    });
+	}
+	double audioSeconds = 0.0;
+	for (int i = 0; i < count; i++) {
+	    PickupSynth synth;
+	    try {
+		synth = (PickupSynth) futures[i].get();
+	    } catch (InterruptedException e) {
+		throw new InterruptedIOException();
+	    } catch (ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof IOException) {
+		    throw (IOException) cause;
+		}
+		throw new RuntimeException(cause);
+	    }
+	    audioSeconds += synth.seconds;
+	    System.err.println(synth.report());
+	}
+	double elapsed = (System.nanoTime() - t0) / 1.0e9;
+	System.err.println(count + " renders, " + RenderMetrics.fmt(audioSeconds) + " s of audio in " +
+			   RenderMetrics.fmt(elapsed) + " s on " + pool.getParallelism() + " threads, " +
+			   RenderMetrics.fmt(audioSeconds / elapsed) + "x real time");
+    }
+
+    String report() {
+	return ((null == outName) ? "stdout" : outName) + ": " + RenderMetrics.fmt(seconds) +
+	    " s, " + modeCount + " modes, " + RenderMetrics.fmt(realTimeFactor) + "x real time";
+    }
+
+    /**
+     * The model the pickups' weights come from.
+     */
+    GuitarModel newModel() {
+	GuitarModel m = new GuitarModel();
+	m.scaleLength = scaleLength;
+	m.stringOpenFreq = stringOpenFreq;
+	m.fretCount = Math.max(m.fretCount, playedFret);
+	m.playedFret = playedFret;
+	m.fastMath = fastMath;
+	for (int i = 0; i < pickups.size(); i++) {
+	    double spec[] = pickups.elementAt(i);
+	    Pickup p = m.addPickup();
+	    p.position = spec[0];
+	    p.width = spec[1];
+	    p.setLevelDB(spec[2]);
+	    p.polarity = (int) spec[3];
+	}
+	if (0 == m.pickupCount()) {
+	    m.addPickup().position = 1.5;
+	}
+	m.publishPickups();
+	return m;
+    }
+
+    /**
+     * Work out the modes of the plucked string, up to TOP_MODE of the
+     * sample rate, and the gain that keeps the loudest possible sum of
+     * them within HEADROOM of full scale.
+     */
+    void setUp() {
+	GuitarModel m = newModel();
+	double f0 = m.fretFreq();
+	double vibLength = m.fretPosition(playedFret);
+	double beta = pluckPosition / vibLength;
+	if (!((0.0 < beta) && (beta < 1.0))) {
+	    throw new IllegalArgumentException("pluck must be between the bridge and the fret");
+	}
+	modeCount = Math.max(0, (int) Math.floor(TOP_MODE * sampleRate / f0));
+	re = new double[modeCount];
+	im = new double[modeCount];
+	cosW = new double[modeCount];
+	sinW = new double[modeCount];
+	start = new double[modeCount];
+	modeCos = new double[modeCount];
+	modeSin = new double[modeCount];
+	double bound = 0.0;
+	for (int k = 0; k < modeCount; k++) {
+	    int n = k + 1;
+	    double f = n * f0;
+	    // a triangle of unit height with its corner at the pluck
+	    double shape = 2.0 * Math.sin(n * Math.PI * beta) /
+		(n * n * Math.PI * Math.PI * beta * (1.0 - beta));
+	    start[k] = shape * n * m.responseAt(f);
+	    bound += Math.abs(start[k]);
+	    double t60 = decay / (1.0 + (f / damping) * (f / damping));
+	    double g = Math.pow(10.0, -3.0 / (t60 * sampleRate));
+	    double w = 2.0 * Math.PI * f / sampleRate;
+	    modeCos[k] = g * Math.cos(w);
+	    modeSin[k] = g * Math.sin(w);
+	}
+	gain = (0.0 < bound) ? HEADROOM / bound : 0.0;
+	// half of the last bit
+	double lsb = 1.0 / (1 << (bits - 1));
+	silence = (0.0 < bound) ? 0.25 * lsb * lsb / (gain * gain) : Double.MAX_VALUE;
+    }
+
+    /**
+     * Start every mode again from the pluck, at rest.
+     */
+    void pluck() {
+	System.arraycopy(start, 0, re, 0, modeCount);
+	System.arraycopy(modeCos, 0, cosW, 0, modeCount);
+	System.arraycopy(modeSin, 0, sinW, 0, modeCount);
+	for (int k = 0; k < modeCount; k++) {
+	    im[k] = 0.0;
+	}
+	activeCount = modeCount;
+    }
+
+    /**
+     * The next count samples into block, from the modes still sounding.
+     * The displacement of a mode is re; im follows its velocity, which
+     * is what the pickups hear.  Modes that have died away are swapped
+     * to the back and no longer computed.
+     */
+    void renderBlock(double block[], int count) {
+	for (int j = 0; j < count; j++) {
+	    block[j] = 0.0;
+	}
+	for (int k = 0; k < activeCount; k++) {
+	    double c = re[k];
+	    double s = im[k];
+	    double cw = cosW[k];
+	    double sw = sinW[k];
+	    for (int j = 0; j < count; j++) {
+		double t = cw * c - sw * s;
+		s = sw * c + cw * s;
+		c = t;
+		block[j] += s;
+	    }
+	    re[k] = c;
+	    im[k] = s;
+	}
+	for (int k = 0; k < activeCount; k++) {
+	    if (re[k] * re[k] + im[k] * im[k] < silence) {
+		int last = --activeCount;
+		swap(re, k, last);
+		swap(im, k, last);
+		swap(cosW, k, last);
+		swap(sinW, k, last);
+		k--;
+	    }
+	}
+    }
+
+    static void swap(double a[], int i, int j) {
+	double t = a[i];
+	a[i] = a[j];
+	a[j] = t;
+    }
+
+    /**
+     * Render the whole thing to outName, or stdout, and work out the real
+     * time factor.
+     */
+    void render() throws IOException {
+	long t0 = System.nanoTime();
+	setUp();
+	long frames = Math.round(seconds * sampleRate);
+	long pluckFrames = (0.0 < every) ? Math.max(1, Math.round(every * sampleRate)) : Long.MAX_VALUE;
+	OutputStream out = (null == outName) ? (OutputStream) System.out : new FileOutputStream(outName);
+	WavWriter wav = new WavWriter(new BufferedOutputStream(out, 1 << 16), sampleRate, bits,
+				      frames, BLOCK_SIZE);
+	long sinceLast = 0;
+	pluck();
+	for (long done = 0; done < frames; ) {
+	    if (pluckFrames == sinceLast) {
+		pluck();
+		sinceLast = 0;
+	    }
+	    int n = (int) Math.min(Math.min(BLOCK_SIZE, frames - done), pluckFrames - sinceLast);
+	    renderBlock(block, n);
+	    wav.write(block, n, gain);
+	    done += n;
+	    sinceLast += n;
+	}
+	wav.flush();
+	if (null != outName) {
+	    out.close();
+	}
+	realTimeFactor = seconds / Math.max(1.0e-9, (System.nanoTime() - t0) / 1.0e9);
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * Latency histograms for the applet's render pipeline: updateDisplay,
+ * generatePlot, the render thread's work, the guitar display's
+ * updateBackground and paint, the response plot's paint, and the time
+ * from a drag or keystroke to the first plot frame that shows it.
+ *
+ * They're published as a JMX MBean, com.till.pickupplot:type=RenderMetrics,
+ * so jconsole or any JMX client can read them, and each timing is also a
+ * com.till.pickupplot.Timing JFR event when a recording wants it:
+ *
+ *   java -XX:StartFlightRecording=filename=pickup.jfr ...
+ *   jfr print --events com.till.pickupplot.Timing pickup.jfr
+ *
+ * Timing is off unless the pickupplot.metrics system property is true,
+ * the MBean's Enabled attribute is set, or a JFR recording is running
+ * with the event on.  While it's off each timed spot costs one read of
+ * active and a branch:
+ *
+ *   long t0 = RenderMetrics.start();
+ *   ...
+ *   RenderMetrics.stop(RenderMetrics.PLOT_PAINT, t0);
+ */
+
+package com.till.pickupplot;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+import jdk.jfr.*;
+
+public class RenderMetrics implements RenderMetricsMBean {
+    static int UPDATE_DISPLAY = 0;
+    static int GENERATE_PLOT = 1;
+    static int RENDER = 2;
+    static int UPDATE_BACKGROUND = 3;
+    static int GUITAR_PAINT = 4;
+    static int PLOT_PAINT = 5;
+    static int INPUT_TO_FRAME = 6;
+    static String TIMER_NAMES[] = {
+	"PickupPlot.updateDisplay", "PickupPlot.generatePlot", "RenderScheduler.render",
+	"GuitarDisplay.updateBackground", "GuitarDisplay.paint", "ResponsePlot.paint",
+	"inputToFrame"};
+    static String OBJECT_NAME = "com.till.pickupplot:type=RenderMetrics";
+
+    static volatile boolean active;	// enabled or recording
+    static boolean enabled;
+    static boolean recording;
+    static LatencyHistogram histograms[] = new LatencyHistogram[TIMER_NAMES.length];
+    static RenderMetrics registered;
+
+    static {
+	for (int i = 0; i < histograms.length; i++) {
+	    histograms[i] = new LatencyHistogram();
+	}
+    }
+
+    /**
+     * The time to pass to stop, or 0 if timing is off.
+     */
+    static long start() {
+	return active ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Record the time since t0, from start, against timer.
+     */
+    static void stop(int timer, long t0) {
+	if (0L == t0) {
+	    return;
+	}
+	long t = System.nanoTime() - t0;
+	histograms[timer].record(t);
+	if (recording) {
+	    TimingEvent.commit(TIMER_NAMES[timer], t);
+	}
+    }
+
+    /**
+     * Publish the MBean and start listening for JFR recordings, once.
+     * Either may be missing (an old VM, or the applet sandbox), and then
+     * that part is quietly left out.
+     */
+    static synchronized void register() {
+	if (null != registered) {
+	    return;
+	}
+	registered = new RenderMetrics();
+	try {
+	    setEnabled0(Boolean.getBoolean("pickupplot.metrics"));
+	    ManagementFactory.getPlatformMBeanServer().registerMBean(registered,
+								     new ObjectName(OBJECT_NAME));
+	} catch (Exception e) {
+	} catch (LinkageError e) {
+	}
+	try {
+	    TimingEvent.listen();
+	} catch (Exception e) {
+	} catch (LinkageError e) {
+	}
+    }
+
+    static synchronized void setEnabled0(boolean on) {
+	enabled = on;
+	active = enabled || recording;
+    }
+
+    static synchronized void setRecording(boolean on) {
+	recording = on;
+	active = enabled || recording;
+    }
+
+    // the MBean
+
+    public boolean isEnabled() {
+	return enabled;
+    }
+
+    public void setEnabled(boolean on) {
+	setEnabled0(on);
+    }
+
+    public String[] getTimerNames() {
+	return TIMER_NAMES.clone();
+    }
+
+    public long[] getCounts() {
+	long counts[] = new long[histograms.length];
+	for (int i = 0; i < counts.length; i++) {
+	    counts[i] = histograms[i].count();
+	}
+	return counts;
+    }
+
+    public double[] getMeanMicros() {
+	double means[] = new double[histograms.length];
+	for (int i = 0; i < means.length; i++) {
+	    means[i] = histograms[i].mean() / 1000.0;
+	}
+	return means;
+    }
+
+    public double[] getP50Micros() {
+	return percentilesMicros(50.0);
+    }
+
+    public double[] getP90Micros() {
+	return percentilesMicros(90.0);
+    }
+
+    public double[] getP99Micros() {
+	return percentilesMicros(99.0);
+    }
+
+    public double[] getMaxMicros() {
+	double maxes[] = new double[histograms.length];
+	for (int i = 0; i < maxes.length; i++) {
+	    maxes[i] = histograms[i].max() / 1000.0;
+	}
+	return maxes;
+    }
+
+    double[] percentilesMicros(double percent) {
+	double p[] = new double[histograms.length];
+	for (int i = 0; i < p.length; i++) {
+	    p[i] = histograms[i].percentile(percent) / 1000.0;
+	}
+	return p;
+    }
+
+    public double percentileMicros(String timer, double percent) {
+	for (int i = 0; i < TIMER_NAMES.length; i++) {
+	    if (TIMER_NAMES[i].equals(timer)) {
+		return histograms[i].percentile(percent) / 1000.0;
+	    }
+	}
+	throw new IllegalArgumentException("no timer " + timer);
+    }
+
+    public String getReport() {
+	StringBuffer sb = new StringBuffer();
+	sb.append(pad("timer", 32) + pad("count", 10) + pad("mean us", 12) +
+		  pad("p50 us", 12) + pad("p90 us", 12) + pad("p99 us", 12) + "max us\n");
+	for (int i = 0; i < histograms.length; i++) {
+	    LatencyHistogram h = histograms[i];
+	    sb.append(pad(TIMER_NAMES[i], 32) + pad("" + h.count(), 10) +
+		      pad(micros(h.mean()), 12) + pad(micros(h.percentile(50.0)), 12) +
+		      pad(micros(h.percentile(90.0)), 12) + pad(micros(h.percentile(99.0)), 12) +
+		      micros(h.max()) + "\n");
+	}
+	return sb.toString();
+    }
+
+    public void reset() {
+	for (int i = 0; i < histograms.length; i++) {
+	    histograms[i].reset();
+	}
+    }
+
+    static String micros(double nanos) {
+	return "" + Math.round(nanos / 100.0) / 10.0;
+    }
+
+    // whole above 100, else to two places, for the tools' reports
+    static String fmt(double v) {
+	if (100.0 <= v) {
+	    return "" + Math.round(v);
+	}
+	return "" + Math.round(v * 100.0) / 100.0;
+    }
+
+    static String pad(String s, int width) {
+	StringBuffer sb = new StringBuffer(s);
+	do {
+	    sb.append(' ');
+	} while (sb.length() < width);
+	return sb.toString();
+    }
+}
+
+/**
+ * A histogram of latencies in nanoseconds, in the style of HdrHistogram:
+ * each power of two is split into SUB_BUCKETS linear buckets, so any
+ * value is known to within 1 / SUB_BUCKETS of itself, from 1 ns to
+ * about 18 minutes in a few kilobytes.  Recording is a few adds with no
+ * locks, and safe from any thread.
+ */
+class LatencyHistogram {
+    static int SUB_BUCKET_BITS = 4;
+    static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static int MAX_EXPONENT = 40;
+    static int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    AtomicLong total = new AtomicLong();
+    AtomicLong sum = new AtomicLong();
+    AtomicLong max = new AtomicLong();
+
+    /**
+     * The bucket for v: small values get one each, then the top
+     * SUB_BUCKET_BITS + 1 bits pick it.
+     */
+    static int bucketOf(long v) {
+	if (v < SUB_BUCKETS) {
+	    return (int) Math.max(v, 0L);
+	}
+	int e = 63 - Long.numberOfLeadingZeros(v);
+	if (MAX_EXPONENT < e) {
+	    return BUCKETS - 1;
+	}
+	int sub = (int) (v >>> (e - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+	return (e - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * The middle of bucket b.
+     */
+    static double valueOf(int b) {
+	if (b < SUB_BUCKETS) {
+	    return b;
+	}
+	int e = b / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+	long low = ((long) (SUB_BUCKETS + b % SUB_BUCKETS)) << (e - SUB_BUCKET_BITS);
+	return low + 0.5 * (1L << (e - SUB_BUCKET_BITS));
+    }
+
+    void record(long nanos) {
+	counts.incrementAndGet(bucketOf(nanos));
+	total.incrementAndGet();
+	sum.addAndGet(nanos);
+	long m = max.get();
+	while ((m < nanos) && !max.compareAndSet(m, nanos)) {
+	    m = max.get();
+	}
+    }
+
+    long count() {
+	return total.get();
+    }
+
+    double mean() {
+	long n = total.get();
+	return (0 == n) ? 0.0 : (double) sum.get() / n;
+    }
+
+    long max() {
+	return max.get();
+    }
+
+    /**
+     * The value percent of the recorded values are at or below, to
+     * within a bucket, or 0 if there are none.
+     */
+    double percentile(double percent) {
+	long n = 0;
+	for (int b = 0; b < BUCKETS; b++) {
+	    n += counts.get(b);
+	}
+	if (0 == n) {
+	    return 0.0;
+	}
+	long rank = Math.max(1L, (long) Math.ceil(percent / 100.0 * n));
+	long seen = 0;
+	for (int b = 0; b < BUCKETS; b++) {
+	    seen += counts.get(b);
+	    if (rank <= seen) {
+		return Math.min(valueOf(b), (double) max.get());
+	    }
+	}
+	return max.get();
+    }
+
+    void reset() {
+	for (int b = 0; b < BUCKETS; b++) {
+	    counts.set(b, 0L);
+	}
+	total.set(0L);
+	sum.set(0L);
+	max.set(0L);
+    }
+}
+
+/**
+ * One timing, as a JFR event.  The latency is measured by RenderMetrics
+ * rather than by the event's own begin and end, so the timings and the
+ * histograms agree.
+ */
+@Name("com.till.pickupplot.Timing")
+@Label("PickupPlot Timing")
+@Category("PickupPlot")
+@Description("A timed step of the PickupPlot render pipeline")
+@StackTrace(false)
+class TimingEvent extends Event {
+    @Label("Timer")
+    String timer;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    static void commit(String timer, long latency) {
+	TimingEvent e = new TimingEvent();
+	if (e.isEnabled()) {
+	    e.timer = timer;
+	    e.latency = latency;
+	    e.commit();
+	}
+    }
+
+    /**
+     * Keep RenderMetrics.recording up to date as recordings start and
+     * stop.
+     */
+    static void listen() {
+	FlightRecorder.addListener(new FlightRecorderListener() {
+	    public void recorderInitialized(FlightRecorder recorder) {
+		update();
+	    }
+
+	    public void recordingStateChanged(Recording recording) {
+		update();
+	    }
+	});
+	update();
+    }
+
+    static void update() {
+	RenderMetrics.setRecording(EventType.getEventType(TimingEvent.class).isEnabled());
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * The JMX view of RenderMetrics.  The arrays are in the order of
+ * TimerNames.
+ */
+
+package com.till.pickupplot;
+
+public interface RenderMetricsMBean {
+    boolean isEnabled();
+    void setEnabled(boolean on);
+    String[] getTimerNames();
+    long[] getCounts();
+    double[] getMeanMicros();
+    double[] getP50Micros();
+    double[] getP90Micros();
+    double[] getP99Micros();
+    double[] getMaxMicros();
+    String getReport();
+    double percentileMicros(String timer, double percent);
+    void reset();
+}
@@ -0,0 +1,35 @@
+/**
+ * Notches and peaks of the response, in order of frequency, as found by
+ * GuitarModel.findFeatures.
+ */
+
+package com.till.pickupplot;
+
+class ResponseFeatures {
+    int count;
+    double freq[] = new double[64];
+    double amp[] = new double[64];		// |response| there; 0 for a true null
+    boolean notch[] = new boolean[64];		// else a peak
+
+    void clear() {
+	count = 0;
+    }
+
+    void add(double f, double a, boolean isNotch) {
+	if (count == freq.length) {
+	    double newFreq[] = new double[2 * count];
+	    double newAmp[] = new double[2 * count];
+	    boolean newNotch[] = new boolean[2 * count];
+	    System.arraycopy(freq, 0, newFreq, 0, count);
+	    System.arraycopy(amp, 0, newAmp, 0, count);
+	    System.arraycopy(notch, 0, newNotch, 0, count);
+	    freq = newFreq;
+	    amp = newAmp;
+	    notch = newNotch;
+	}
+	freq[count] = f;
+	amp[count] = a;
+	notch[count] = isNotch;
+	count++;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * The strings of the instrument, lowest first: each one's open frequency,
+ * and how much further from the bridge than the pickup's position it 
+ * passes under the pickups (for staggered pole pieces or a slanted 
+ * pickup; 0 for most).  Never changed once made, so it can be shared 
+ * like a PickupBank.
+ */
+
+package com.till.pickupplot;
+
+class StringSet {
+    static StringSet STANDARD = new StringSet(new double[] {
+	82.41, 110.0, 146.83, 196.0, 246.94, 329.63});
+
+    int count;
+    double openFreq[];
+    double offset[];		// inches
+
+    StringSet(double openFreq[]) {
+	this(openFreq, new double[openFreq.length]);
+    }
+
+    StringSet(double openFreq[], double offset[]) {
+	if (openFreq.length != offset.length) {
+	    throw new IllegalArgumentException("need an offset for each string");
+	}
+	count = openFreq.length;
+	this.openFreq = openFreq.clone();
+	this.offset = offset.clone();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Writes PCM samples to a WAV stream, a block at a time through a buffer
+ * made once.  The length has to be known up front, since it goes in the
+ * header.
+ */
+
+package com.till.pickupplot;
+
+import java.io.*;
+
+class WavWriter {
+    OutputStream out;
+    int channels;
+    int bytesPerSample;
+    double fullScale;
+    byte buf[];
+
+    WavWriter(OutputStream out, int sampleRate, int bits, long frames, int blockSize)
+	throws IOException {
+	this(out, sampleRate, 1, bits, frames, blockSize);
+    }
+
+    WavWriter(OutputStream out, int sampleRate, int channels, int bits, long frames, 
+	      int blockSize) throws IOException {
+	this.out = out;
+	this.channels = channels;
+	bytesPerSample = bits / 8;
+	fullScale = (1 << (bits - 1)) - 1;
+	long dataSize = frames * channels * bytesPerSample;
+	if (0xffffffffL - 36 < dataSize) {
+	    throw new IllegalArgumentException("too long for a WAV file");
+	}
+	buf = new byte[Math.max(44, blockSize * channels * bytesPerSample)];
+	int i = 0;
+	i = putChars(buf, i, "RIFF");
+	i = putInt(buf, i, 36 + dataSize, 4);
+	i = putChars(buf, i, "WAVEfmt ");
+	i = putInt(buf, i, 16, 4);		// fmt chunk size
+	i = putInt(buf, i, 1, 2);		// PCM
+	i = putInt(buf, i, channels, 2);
+	i = putInt(buf, i, sampleRate, 4);
+	i = putInt(buf, i, (long) sampleRate * channels * bytesPerSample, 4);
+	i = putInt(buf, i, channels * bytesPerSample, 2);	// block align
+	i = putInt(buf, i, bits, 2);
+	i = putChars(buf, i, "data");
+	i = putInt(buf, i, dataSize, 4);
+	out.write(buf, 0, i);
+    }
+
+    static int putChars(byte b[], int i, String s) {
+	for (int k = 0; k < s.length(); k++) {
+	    b[i++] = (byte) s.charAt(k);
+	}
+	return i;
+    }
+
+    /**
+     * v as count bytes, little endian.
+     */
+    static int putInt(byte b[], int i, long v, int count) {
+	for (int k = 0; k < count; k++) {
+	    b[i++] = (byte) (v >> (8 * k));
+	}
+	return i;
+    }
+
+    /**
+     * Write count samples of a mono stream, times gain, rounded and
+     * clipped to full scale.
+     */
+    void write(double samples[], int count, double gain) throws IOException {
+	double scale = gain * fullScale;
+	int n = bytesPerSample;
+	int i = 0;
+	for (int j = 0; j < count; j++) {
+	    long v = Math.round(samples[j] * scale);
+	    v = Math.max(-(long) fullScale - 1, Math.min((long) fullScale, v));
+	    for (int k = 0; k < n; k++) {
+		buf[i++] = (byte) (v >> (8 * k));
+	    }
+	}
+	out.write(buf, 0, i);
+    }
+
+    /**
+     * Same, for each channel, interleaved.  samples[c][from + j] is the
+     * j'th sample of channel c.
+     */
+    void write(double samples[][], int from, int count, double gain) throws IOException {
+	double scale = gain * fullScale;
+	int n = bytesPerSample;
+	int i = 0;
+	for (int j = from; j < from + count; j++) {
+	    for (int c = 0; c < channels; c++) {
+		long v = Math.round(samples[c][j] * scale);
+		v = Math.max(-(long) fullScale - 1, Math.min((long) fullScale, v));
+		for (int k = 0; k < n; k++) {
+		    buf[i++] = (byte) (v >> (8 * k));
+		}
+	    }
+	}
+	out.write(buf, 0, i);
+    }
+
+    void flush() throws IOException {
+	out.flush();
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * A few daemon threads that run the iterations of a loop alongside the
+ * calling thread, for work that splits into independent pieces.  The 
+ * threads are started once and wait between loops.  One loop runs at a
+ * time; other callers wait their turn.
+ */
+
+package com.till.pickupplot;
+
+class WorkerGang {
+    static WorkerGang shared = new WorkerGang(Runtime.getRuntime().availableProcessors() - 1);
+    static WorkerGang caller = new WorkerGang(0);	// runs each loop on the calling thread
+
+    Thread threads[];
+    Loop loop;			// the loop being run, or null
+    int next;			// the next iteration to hand out
+    int end;
+    int running;		// iterations handed out and not yet done
+    RuntimeException failure;
+
+    /**
+     * The body of a loop, run once for each iteration i.
+     */
+    static abstract class Loop {
+	abstract void run(int i);
+    }
+
+    WorkerGang(int threadCount) {
+	threads = new Thread[Math.max(0, threadCount)];
+	for (int i = 0; i < threads.length; i++) {
+	    threads[i] = new Thread("WorkerGang " + i) {
+		public void run() {
+		    serve();
+		}
+	    };
+	    threads[i].setDaemon(true);
+	    threads[i].start();
+	}
+    }
+
+    /**
+     * Run iterations 0 to n - 1 of l, and return when they're all done.
+     * If any of them throws, the first exception is thrown from here.
+     */
+    void run(Loop l, int n) {
+	if ((0 == threads.length) || (n < 2)) {
+	    for (int i = 0; i < n; i++) {
+		l.run(i);
+	    }
+	    return;
+	}
+	boolean interrupted = false;
+	RuntimeException f;
+	synchronized (this) {
+	    while (null != loop) {
+		try {
+		    wait();
+		} catch (InterruptedException e) {
+		    interrupted = true;
+		}
+	    }
+	    loop = l;
+	    next = 0;
+	    end = n;
+	    failure = null;
+	    notifyAll();
+	}
+	work(l);
+	synchronized (this) {
+	    while (0 < running) {
+		try {
+		    wait();
+		} catch (InterruptedException e) {
+		    interrupted = true;
+		}
+	    }
+	    f = failure;
+	    loop = null;
+	    notifyAll();
+	}
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+	if (null != f) {
+	    throw f;
+	}
+    }
+
+    synchronized int take(Loop l) {
+	if ((l != loop) || (end <= next)) {
+	    return -1;
+	}
+	running++;
+	return next++;
+    }
+
+    synchronized void done(RuntimeException e) {
+	if ((null != e) && (null == failure)) {
+	    failure = e;
+	}
+	if (0 == --running) {
+	    notifyAll();
+	}
+    }
+
+    void work(Loop l) {
+	int i;
+	while (0 <= (i = take(l))) {
+	    RuntimeException e = null;
+	    try {
+		l.run(i);
+	    } catch (RuntimeException x) {
+		e = x;
+	    }
+	    done(e);
+	}
+    }
+
+    void serve() {
+	while (true) {
+	    Loop l;
+	    synchronized (this) {
+		while ((null == loop) || (end <= next)) {
+		    try {
+			wait();
+		    } catch (InterruptedException e) {
+			return;
+		    }
+		}
+		l = loop;
+	    }
+	    work(l);
+	}
+    }
+}
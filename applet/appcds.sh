@@ -0,0 +1,35 @@
+#!/bin/sh
+#
+# Build a class data sharing archive for AppletLauncher, so the JDK and
+# applet classes it needs are mapped in at startup rather than loaded,
+# parsed and verified.  Needs JDK 13 or later and a display.
+#
+#   sh appcds.sh classes [class]
+#
+# where classes is the directory the applets were compiled into and class
+# is the applet to train on (default PickupPlot).  Shared classes have to
+# come from a jar, so it jars the classes into pickupplot.jar, then does
+# one training run, which brings the applet up, paints it and quits, and
+# writes the classes it used to pickupplot.jsa.  Then run with:
+#
+#   java -XX:SharedArchiveFile=pickupplot.jsa -cp pickupplot.jar \
+#       com.till.pickupplot.AppletLauncher -time PickupPlot
+#
+# and compare the time to the first frame with a run without the archive.
+# The archive only works with the JDK that made it and the same jar, so
+# make it again after either changes.
+
+CLASSES=${1:?usage: sh appcds.sh classes [class]}
+APPLET=${2:-PickupPlot}
+JAR=pickupplot.jar
+ARCHIVE=pickupplot.jsa
+
+jar cf $JAR -C "$CLASSES" . || exit 1
+
+java -XX:ArchiveClassesAtExit=$ARCHIVE -cp $JAR \
+    com.till.pickupplot.AppletLauncher -train "$APPLET" || exit 1
+
+echo "with only the JDK's own archive:"
+java -Xshare:auto -cp $JAR com.till.pickupplot.AppletLauncher -time -train "$APPLET"
+echo "with the archive:"
+java -XX:SharedArchiveFile=$ARCHIVE -cp $JAR com.till.pickupplot.AppletLauncher -time -train "$APPLET"
@@ -0,0 +1,74 @@
+/**
+ * FastTrig against Math, and the fast model against the exact one: the
+ * error bounds its doc comment promises.
+ */
+
+package com.till.pickupplot;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FastTrigTest {
+    @Test
+    void sinWithinBound() {
+	Random r = new Random(1);
+	for (int j = 0; j < 1000000; j++) {
+	    double x = (r.nextDouble() - 0.5) * 2000.0;
+	    assertEquals(Math.sin(x), FastTrig.sin(x), FastTrig.MAX_SIN_ERROR, "x " + x);
+	}
+	// the table points themselves, and either side of zero
+	for (int i = -FastTrig.SIZE; i <= FastTrig.SIZE; i++) {
+	    double x = i * 2.0 * Math.PI / FastTrig.SIZE;
+	    assertEquals(Math.sin(x), FastTrig.sin(x), FastTrig.MAX_SIN_ERROR, "x " + x);
+	}
+    }
+
+    @Test
+    void sincWithinBound() {
+	Random r = new Random(2);
+	for (int j = 0; j < 1000000; j++) {
+	    // dense near the series limit, where the two halves meet
+	    double x = (0 == j % 2) ? (r.nextDouble() - 0.5) * 4.0 : (r.nextDouble() - 0.5) * 2000.0;
+	    double exact = (0.0 == x) ? 1.0 : Math.sin(x) / x;
+	    assertEquals(exact, FastTrig.sinc(x), FastTrig.MAX_SINC_ERROR, "x " + x);
+	}
+	assertEquals(1.0, FastTrig.sinc(0.0));
+    }
+
+    // within 1e-6 times the pickups' levels, past the bridge too
+    @Test
+    void fastModelMatchesExact() {
+	Random r = new Random(3);
+	for (int t = 0; t < 50; t++) {
+	    GuitarModel exact = new GuitarModel();
+	    GuitarModel fast = new GuitarModel();
+	    fast.fastMath = true;
+	    int k = 1 + r.nextInt(6);
+	    double levels = 0.0;
+	    for (int i = 0; i < k; i++) {
+		double position = (r.nextDouble() - 0.25) * 8.0;
+		double width = (r.nextDouble() - 0.25) * 2.0;
+		double level = r.nextDouble() * 12.0 - 6.0;
+		int polarity = r.nextBoolean() ? +1 : -1;
+		for (GuitarModel m : new GuitarModel[] { exact, fast }) {
+		    Pickup p = m.addPickup();
+		    p.position = position;
+		    p.width = width;
+		    p.setLevelDB(level);
+		    p.polarity = polarity;
+		}
+		levels += exact.getPickup(i).level;
+	    }
+	    exact.publishPickups();
+	    fast.publishPickups();
+	    for (int j = 0; j < 2000; j++) {
+		double f = 20.0 * Math.pow(1000.0, j / 1999.0);
+		assertEquals(exact.responseAt(f), fast.responseAt(f), 1.0e-6 * levels,
+			     "t " + t + " f " + f);
+	    }
+	}
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * responseEnvelope's columns against a brute force sweep of each one.
+ */
+
+package com.till.pickupplot;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseEnvelopeTest {
+    static int COUNT = 512;
+    static int OVERSAMPLE = 256;
+    static double FLOOR = 0.01;		// -40 dB
+    static double MAX_DB_ERROR = 2.5;
+
+    // as the plot shows it: dB, clipped to its range
+    static double plotDB(double amp) {
+	return Math.max(-40.0, Math.min(10.0, 20.0 * Math.log10(Math.abs(amp))));
+    }
+
+    static GuitarModel newModel(Random r, int pickupCount, double spread) {
+	GuitarModel m = new GuitarModel();
+	for (int i = 0; i < pickupCount; i++) {
+	    Pickup p = m.addPickup();
+	    p.position = 0.5 + r.nextDouble() * spread;
+	    p.width = r.nextDouble() * 2.0;
+	    p.polarity = r.nextBoolean() ? +1 : -1;
+	}
+	m.publishPickups();
+	return m;
+    }
+
+    /**
+     * Every column's min and max, from OVERSAMPLE exact responses across
+     * it, within MAX_DB_ERROR of the envelope's.
+     */
+    static void checkEnvelope(GuitarModel m, String what) {
+	m.responseEnvelope(20.0, 20000.0, COUNT, FLOOR);
+	double logStep = Math.log(1000.0) / (COUNT - 1);
+	for (int c = 0; c < COUNT; c++) {
+	    double lo = Double.MAX_VALUE;
+	    double hi = 0.0;
+	    for (int s = -OVERSAMPLE / 2; s < OVERSAMPLE / 2; s++) {
+		double f = 20.0 * Math.exp((c + (s + 0.5) / OVERSAMPLE) * logStep);
+		if ((f < 20.0) || (20000.0 < f)) {
+		    continue;
+		}
+		double a = Math.abs(m.responseAt(f));
+		lo = Math.min(lo, a);
+		hi = Math.max(hi, a);
+	    }
+	    assertEquals(plotDB(lo), plotDB(m.envelopeMin[c]), MAX_DB_ERROR, what + " min, column " + c);
+	    assertEquals(plotDB(hi), plotDB(m.envelopeMax[c]), MAX_DB_ERROR, what + " max, column " + c);
+	}
+    }
+
+    @Test
+    void matchesBruteForce() {
+	Random r = new Random(5);
+	for (int t = 0; t < 40; t++) {
+	    checkEnvelope(newModel(r, 1 + r.nextInt(5), (0 == t % 10) ? 20.0 : 6.0), "layout " + t);
+	}
+    }
+
+    // past the bridge the terms just change sign; the notches are as deep
+    @Test
+    void negativePositions() {
+	Random r = new Random(6);
+	for (int t = 0; t < 20; t++) {
+	    GuitarModel m = newModel(r, 1 + r.nextInt(5), 6.0);
+	    for (int i = 0; i < m.pickupCount(); i++) {
+		Pickup p = m.getPickup(i);
+		p.position = -p.position;
+		if (0 == i % 2) {
+		    p.width = -p.width;
+		}
+	    }
+	    m.publishPickups();
+	    checkEnvelope(m, "mirrored layout " + t);
+	}
+    }
+
+    // the plain curve, without the refinement, misses the narrow notches
+    @Test
+    void betterThanCenters() {
+	GuitarModel m = newModel(new Random(7), 4, 20.0);
+	double a[] = m.responseEnvelope(20.0, 20000.0, COUNT, FLOOR);
+	int deeper = 0;
+	for (int c = 0; c < COUNT; c++) {
+	    assertTrue(m.envelopeMin[c] <= Math.abs(a[c]), "column " + c);
+	    assertTrue(Math.abs(a[c]) <= m.envelopeMax[c], "column " + c);
+	    if (plotDB(m.envelopeMin[c]) < plotDB(a[c]) - 6.0) {
+		deeper++;
+	    }
+	}
+	assertTrue(0 < deeper);
+    }
+}
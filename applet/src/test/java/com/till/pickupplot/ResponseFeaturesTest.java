@@ -0,0 +1,129 @@
+/**
+ * findFeatures against a dense sweep, and its limits: pickups past the
+ * bridge, and ranges with far too many nulls to list.
+ */
+
+package com.till.pickupplot;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseFeaturesTest {
+    static int SWEEP_POINTS = 200000;
+    static double MAX_HZ_ERROR = 0.5;
+
+    static GuitarModel newModel(double positions[], double widths[]) {
+	GuitarModel m = new GuitarModel();
+	for (int i = 0; i < positions.length; i++) {
+	    Pickup p = m.addPickup();
+	    p.position = positions[i];
+	    p.width = widths[i];
+	    p.polarity = (0 == i % 2) ? +1 : -1;
+	}
+	m.publishPickups();
+	return m;
+    }
+
+    /**
+     * The local minima and maxima of |response| on a linear sweep from 
+     * fMin to fMax, as {freq, 1 for a notch or 0 for a peak}.
+     */
+    static ArrayList<double[]> sweep(GuitarModel m, double fMin, double fMax) {
+	ArrayList<double[]> found = new ArrayList<double[]>();
+	double prevA = -1.0;
+	double f = fMin;
+	double a = Math.abs(m.responseAt(fMin));
+	for (int j = 1; j <= SWEEP_POINTS; j++) {
+	    double nextF = fMin + (fMax - fMin) * j / SWEEP_POINTS;
+	    double nextA = Math.abs(m.responseAt(nextF));
+	    if (0.0 <= prevA) {
+		if ((a < prevA) && (a < nextA)) {
+		    found.add(new double[] { f, 1.0 });
+		}
+		if ((prevA < a) && (nextA < a)) {
+		    found.add(new double[] { f, 0.0 });
+		}
+	    }
+	    prevA = a;
+	    a = nextA;
+	    f = nextF;
+	}
+	return found;
+    }
+
+    static void checkFeatures(GuitarModel m, String what) {
+	ResponseFeatures features = m.findFeatures(20.0, 20000.0, new ResponseFeatures());
+	ArrayList<double[]> expected = sweep(m, 20.0, 20000.0);
+	assertEquals(expected.size(), features.count, what + " count");
+	for (int i = 0; i < features.count; i++) {
+	    double e[] = expected.get(i);
+	    assertEquals(1.0 == e[1], features.notch[i], what + " feature " + i + " type");
+	    assertEquals(e[0], features.freq[i], MAX_HZ_ERROR, what + " feature " + i);
+	}
+    }
+
+    @Test
+    void matchesSweep() {
+	Random r = new Random(7);
+	for (int t = 0; t < 40; t++) {
+	    int k = 1 + t % 5;
+	    double positions[] = new double[k];
+	    double widths[] = new double[k];
+	    for (int i = 0; i < k; i++) {
+		positions[i] = 0.5 + r.nextDouble() * 6.0;
+		widths[i] = (0 == t % 7) ? 0.0 : r.nextDouble() * 2.0;
+	    }
+	    checkFeatures(newModel(positions, widths), "layout " + t);
+	}
+    }
+
+    // a pickup past the bridge has its mirror image's features
+    @Test
+    @Timeout(10)
+    void negativePositions() {
+	double cases[][] = { { 0.3 }, { 0.1 }, { 0.3, 2.0 }, { 1.5, 4.0, 0.7 } };
+	for (double positions[] : cases) {
+	    double mirrored[] = new double[positions.length];
+	    double widths[] = new double[positions.length];
+	    for (int i = 0; i < positions.length; i++) {
+		mirrored[i] = -positions[i];
+		widths[i] = 1.0;
+	    }
+	    ResponseFeatures a = newModel(positions, widths).findFeatures(20.0, 20000.0, new ResponseFeatures());
+	    ResponseFeatures b = newModel(mirrored, widths).findFeatures(20.0, 20000.0, new ResponseFeatures());
+	    assertTrue(0 < a.count);
+	    assertEquals(a.count, b.count, "count for " + positions[0]);
+	    for (int i = 0; i < a.count; i++) {
+		assertEquals(a.notch[i], b.notch[i]);
+		assertEquals(a.freq[i], b.freq[i], 1.0e-6 * a.freq[i]);
+	    }
+	    checkFeatures(newModel(mirrored, widths), "mirror of " + positions[0]);
+	}
+    }
+
+    @Test
+    void onTheBridge() {
+	GuitarModel m = newModel(new double[] { 0.0 }, new double[] { 0.0 });
+	assertEquals(0, m.findFeatures(20.0, 20000.0, new ResponseFeatures()).count);
+    }
+
+    // absurd positions stop at FEATURE_MAX_NULLS instead of running on
+    @Test
+    @Timeout(10)
+    void searchIsCapped() {
+	int max = GuitarModel.FEATURE_MAX_NULLS;
+	double cases[][] = { { 1.0e5 }, { -1.0e5 }, { 1.0e5, 3.0e4 } };
+	for (double positions[] : cases) {
+	    double widths[] = new double[positions.length];
+	    ResponseFeatures f = newModel(positions, widths).findFeatures(20.0, 20000.0, new ResponseFeatures());
+	    assertTrue(0 < f.count);
+	    assertTrue(f.count <= 4 * max, "count " + f.count);
+	    assertTrue(f.freq[f.count - 1] <= 20000.0);
+	}
+    }
+}
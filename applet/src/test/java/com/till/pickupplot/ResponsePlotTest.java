@@ -0,0 +1,80 @@
+/**
+ * plotCurve through the raster against plotCurve through Graphics calls:
+ * the same pixels, whatever the curve holds.
+ */
+
+package com.till.pickupplot;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponsePlotTest {
+    /**
+     * A plot laid out at its preferred size, drawing to an offscreen image.
+     */
+    static ResponsePlot newPlot(boolean directRaster) {
+	ResponsePlot plot = new ResponsePlot();
+	plot.setFont(new Font("Dialog", Font.PLAIN, 12));
+	Dimension d = plot.preferredSize();
+	plot.reshape(0, 0, d.width, d.height);
+	plot.makeImages();
+	plot.plotG = plot.backG;
+	plot.directRaster = directRaster;
+	plot.setBar(82.4, 24);
+	plot.setLineCursor(82.4);
+	return plot;
+    }
+
+    @Test
+    void rasterMatchesGraphics() {
+	Random r = new Random(3);
+	ResponsePlot raster = newPlot(true);
+	ResponsePlot graphics = newPlot(false);
+	for (int t = 0; t < 200; t++) {
+	    GuitarModel m = new GuitarModel();
+	    int k = 1 + r.nextInt(6);
+	    for (int i = 0; i < k; i++) {
+		Pickup p = m.addPickup();
+		p.position = 0.3 + r.nextDouble() * 8.0;
+		p.width = r.nextDouble() * 2.0;
+		p.setLevelDB(r.nextDouble() * 12.0 - 6.0);
+		p.polarity = r.nextBoolean() ? +1 : -1;
+	    }
+	    m.publishPickups();
+	    int n = raster.getPlotPointCount();
+	    double amps[] = m.responseEnvelope(raster.fMin, raster.fMax, n, raster.floorAmp());
+	    if (0 == t % 3) {
+		// the values that have to clip rather than wrap
+		amps[5] = 0.0;
+		amps[6] = Double.NaN;
+		amps[7] = 1.0e-310;
+		amps[8] = Double.POSITIVE_INFINITY;
+		amps[9] = Double.NEGATIVE_INFINITY;
+	    }
+	    for (ResponsePlot plot : new ResponsePlot[] { raster, graphics }) {
+		if (0 == t % 2) {
+		    plot.plotCurve(m.curveFreqs, amps, m.envelopeMin, m.envelopeMax, n);
+		} else {
+		    plot.plotCurve(m.curveFreqs, amps, n);
+		}
+		plot.backReady = false;
+	    }
+	    BufferedImage a = (BufferedImage) raster.backImage;
+	    BufferedImage b = (BufferedImage) graphics.backImage;
+	    int differing = 0;
+	    for (int y = 0; y < a.getHeight(); y++) {
+		for (int x = 0; x < a.getWidth(); x++) {
+		    if (a.getRGB(x, y) != b.getRGB(x, y)) {
+			differing++;
+		    }
+		}
+	    }
+	    assertEquals(0, differing, "pixels differing for curve " + t);
+	}
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Benchmarks for the calculator's parse and apply path, without AWT.
+ *
+ *   java -jar jmh/target/benchmarks.jar CalculatorBenchmark
+ *
+ * key is one button of CalculatorReplay's script, '=' included, so it
+ * goes through Expression on the way; evaluate is a whole expression
+ * from its text.  The rest are Expression on its own.
+ */
+
+package com.till.calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+ static String NUMBERS[] = {"0", "7", "12.5", "3.14159", "-42", "100000", "0.001", "9876.54"};
+ static String EXPRESSIONS[] = {"12.5+7*3", "3.14159*2-1/3", "(100000-42)/7+0.001", "9876.54*2+3*4-5"};
+ static String FORMULA = "2*x^2 + 3*(y - 1)/x - sqrt(y)";
+ static String SCRIPT = "12.5+7*3=*2=3.14159*2-1/3=100000-42/7+0.001=9876.54*2+3*4-5=" +
+  "1/0=5-=0.1+0.2=.5*.5=7*+3=1/3*3=123456789*1000=0.00012/7=";
+ static int BATCH = 4096;
+
+ CalculatorCore core = new CalculatorCore();
+ char keys[] = SCRIPT.toCharArray();
+ double values[] = new double[2];
+ double columns[][] = new double[2][BATCH];
+ double out[] = new double[BATCH];
+ int i;
+
+ @Setup
+ public void setUp() {
+  for (int j = 0; j < BATCH; j++) {
+   columns[0][j] = 1 + (j & 1023);
+   columns[1][j] = 0.5 * (j & 511);
+  }
+ }
+
+ //ڸ float ȯ,  label.getText() ó
+ @Benchmark
+ public float parse() {
+  return Float.valueOf(NUMBERS[i++ % NUMBERS.length]).floatValue();
+ }
+
+ // ڿ: ĳõ  ã, ,  ڿ
+ @Benchmark
+ public int evaluate() {
+  return String.valueOf(Expression.evaluate(EXPRESSIONS[i++ % EXPRESSIONS.length])).length();
+ }
+
+ //ư  : , , '='  Ű Է
+ @Benchmark
+ public double key() {
+  core.key(keys[i++ % keys.length]);
+  return core.changed() ? core.result() : 0;
+ }
+
+ //ĳ  Ľ̰ 
+ @Benchmark
+ public int expressionParse() {
+  return new Expression(FORMULA).scratchDepth;
+ }
+
+ //   
+ @Benchmark
+ public double expressionEval() {
+  values[0] = 1 + (i & 1023);
+  values[1] = 0.5 * (i++ & 511);
+  return Expression.compile(FORMULA).eval(values);
+ }
+
+ //BATCH  Ѳ, ops/s BATCH ϸ  
+ @Benchmark
+ public double expressionEvalBatch() {
+  Expression.compile(FORMULA).eval(columns, out, BATCH);
+  return out[BATCH - 1];
+ }
+}
@@ -0,0 +1,29 @@
+/**
+ * The main class of benchmarks.jar: JMH's own, with the gc profiler
+ * always on, so every benchmark reports gc.alloc.rate (MB/s) and
+ * gc.alloc.rate.norm (bytes per op) under its ops/s.
+ *
+ *   java -jar jmh/target/benchmarks.jar [regexp] [JMH options]
+ *   java -jar jmh/target/benchmarks.jar -h
+ *
+ * The benchmarks are PickupBenchmark, PlotBenchmark and
+ * com.till.calculator.CalculatorBenchmark.
+ */
+
+package com.till.pickupplot;
+
+public class Benchmarks {
+    public static void main(String args[]) throws Exception {
+	for (int i = 0; i + 1 < args.length; i++) {
+	    if (args[i].equals("-prof") && args[i + 1].startsWith("gc")) {
+		org.openjdk.jmh.Main.main(args);
+		return;
+	    }
+	}
+	String withGC[] = new String[args.length + 2];
+	System.arraycopy(args, 0, withGC, 0, args.length);
+	withGC[args.length] = "-prof";
+	withGC[args.length + 1] = "gc";
+	org.openjdk.jmh.Main.main(withGC);
+    }
+}
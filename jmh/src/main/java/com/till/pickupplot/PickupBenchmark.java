@@ -0,0 +1,205 @@
+/**
+ * Benchmarks for the pickup physics and the guitar display, for 1 to 16
+ * pickups spread along the string.
+ *
+ *   java -jar jmh/target/benchmarks.jar PickupBenchmark -p pickups=1,16
+ *
+ * Each op is one call: a response at one frequency, a whole sweep of
+ * PLOT_POINTS frequencies, or one frame of a drag.  The drags move the
+ * first pickup a little each op, as the mouse would.  Drawing goes to an
+ * offscreen image, and the fork runs headless, so no display is needed.
+ */
+
+package com.till.pickupplot;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PickupBenchmark {
+    static int PLOT_POINTS = 512;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int pickups;
+
+    GuitarModel model;		// plain pickups
+    GuitarModel fast;		// the same with fastMath
+    GuitarModel loaded;		// coils driving the cable and pots
+    GuitarModel strings;	// six strings
+    GuitarModel neck;		// 60 frets, for the display
+    GuitarDisplay display;
+    Graphics screen;
+    ResponsePlot plot;
+    ResponseFeatures features = new ResponseFeatures();
+    ComplexResponse traces = new ComplexResponse();
+    double freqs[] = PickupSweep.logAxis(20.0, 20000.0, PLOT_POINTS);
+    double amps[] = new double[PLOT_POINTS];
+    double freq = 20.0;
+    int step = 0;
+
+    @Setup
+    public void setUp() {
+	model = newModel(pickups);
+	fast = newModel(pickups);
+	fast.fastMath = true;
+	loaded = newLoadedModel(pickups);
+	strings = newModel(pickups);
+	strings.strings = StringSet.STANDARD;
+	neck = newModel(pickups);
+	neck.fretCount = 60;
+	display = newDisplay(neck);
+	screen = display.newImage(display.size().width, display.size().height).getGraphics();
+	plot = newPlot();
+    }
+
+    @TearDown
+    public void tearDown() {
+	screen.dispose();
+    }
+
+    /**
+     * A model with this many pickups spread along the string.
+     */
+    static GuitarModel newModel(int pickupCount) {
+	GuitarModel m = new GuitarModel();
+	for (int i = 0; i < pickupCount; i++) {
+	    Pickup p = m.addPickup();
+	    p.polarity = (0 == i % 2) ? +1 : -1;
+	    p.setLevelDB(-i);
+	}
+	m.publishPickups();
+	return m;
+    }
+
+    /**
+     * newModel, with single coils and humbuckers taking turns.
+     */
+    static GuitarModel newLoadedModel(int pickupCount) {
+	GuitarModel m = newModel(pickupCount);
+	for (int i = 0; i < pickupCount; i++) {
+	    m.getPickup(i).setCoil(1 + i % 2);
+	}
+	m.publishPickups();
+	return m;
+    }
+
+    /**
+     * A plot laid out at its preferred size, drawing to an offscreen image.
+     */
+    static ResponsePlot newPlot() {
+	ResponsePlot plot = new ResponsePlot();
+	plot.setFont(new Font("Dialog", Font.PLAIN, 12));
+	Dimension d = plot.preferredSize();
+	plot.reshape(0, 0, d.width, d.height);
+	plot.makeImages();
+	plot.plotG = plot.backG;
+	return plot;
+    }
+
+    /**
+     * A guitar display for m at its preferred size, drawing offscreen.
+     */
+    static GuitarDisplay newDisplay(GuitarModel m) {
+	GuitarDisplay d = new GuitarDisplay(null, m);
+	d.setFont(new Font("Dialog", Font.PLAIN, 12));
+	d.smallFont = new Font("Dialog", Font.PLAIN, 9);
+	Dimension size = d.preferredSize();
+	d.reshape(0, 0, size.width, size.height);
+	d.makeImages();
+	return d;
+    }
+
+    // the first pickup a step further along
+    void drag(GuitarModel m, double stepSize) {
+	m.getPickup(0).position = 1.0 + stepSize * (step++ % 1000);
+	m.publishPickups();
+    }
+
+    @Benchmark
+    public double responseAt() {
+	freq = (20000.0 < freq) ? 20.0 : freq * 1.01;
+	return model.responseAt(freq);
+    }
+
+    @Benchmark
+    public double sweep() {
+	model.responseAt(freqs, amps, PLOT_POINTS);
+	return amps[PLOT_POINTS / 2];
+    }
+
+    @Benchmark
+    public double sweepFast() {
+	fast.responseAt(freqs, amps, PLOT_POINTS);
+	return amps[PLOT_POINTS / 2];
+    }
+
+    // magnitude, phase and group delay from one pass, against sweep
+    @Benchmark
+    public double complexResponse() {
+	return model.complexResponse(freqs, PLOT_POINTS, traces).groupDelay[PLOT_POINTS / 2];
+    }
+
+    @Benchmark
+    public double complexResponseFast() {
+	return fast.complexResponse(freqs, PLOT_POINTS, traces).groupDelay[PLOT_POINTS / 2];
+    }
+
+    @Benchmark
+    public double responseCurveDrag() {
+	drag(model, 0.001);
+	return model.responseCurve(20.0, 20000.0, PLOT_POINTS)[step % PLOT_POINTS];
+    }
+
+    // the same with every pickup's coil driving the cable and pots
+    @Benchmark
+    public double responseCurveDragLoaded() {
+	drag(loaded, 0.001);
+	return loaded.responseCurve(20.0, 20000.0, PLOT_POINTS)[step % PLOT_POINTS];
+    }
+
+    // the render thread's whole job for a fresh model
+    @Benchmark
+    public int generatePlot() {
+	int count = plot.getPlotPointCount();
+	model.scaleLength = (0 == step++ % 2) ? 25.5 : 24.75;
+	double a[] = model.responseCurve(plot.fMin, plot.fMax, count);
+	plot.plotCurve(model.curveFreqs, a, count);
+	return plot.prevY;
+    }
+
+    // six strings, every one from scratch each time
+    @Benchmark
+    public double stringCurves() {
+	strings.scaleLength = (0 == step++ % 2) ? 25.5 : 24.75;
+	return strings.stringCurves(20.0, 20000.0, PLOT_POINTS)[step % 6][step % PLOT_POINTS];
+    }
+
+    @Benchmark
+    public double stringCurvesDrag() {
+	drag(strings, 0.001);
+	return strings.stringCurves(20.0, 20000.0, PLOT_POINTS)[step % 6][step % PLOT_POINTS];
+    }
+
+    @Benchmark
+    public int findFeatures() {
+	return model.findFeatures(20.0, 20000.0, features).count;
+    }
+
+    // repainting what the toolkit would: just the dirty part
+    @Benchmark
+    public int displayDrag() {
+	drag(neck, 0.01);
+	display.updateScene();
+	Rectangle r = display.dirty;
+	screen.setClip(r.x, r.y, r.width, r.height);
+	display.paint(screen);
+	return display.frame;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Benchmarks for the plot, the curve cache and the audio tools, on a
+ * four pickup model.
+ *
+ *   java -jar jmh/target/benchmarks.jar PlotBenchmark
+ *
+ * setPlotPoint, ampToY and ampsToY are the dB conversion, point by point
+ * and for a whole curve; plotCurve draws one, through the raster and
+ * through Graphics calls.  The plot draws to an offscreen image.
+ */
+
+package com.till.pickupplot;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PlotBenchmark {
+    GuitarModel model;
+    PickupBank bank;
+    ResponsePlot plot;
+    int count;
+    double amps[];
+    double envelope[];
+    int ys[];
+    CurveCache cache;
+    PickupSynth synth;
+    Convolver convolver;
+    double in[];
+    double out[];
+    double radRelFreq = 0.001;
+    double amp = 0.003;
+    int step = 0;
+
+    @Setup
+    public void setUp() {
+	model = PickupBenchmark.newModel(4);
+	bank = PickupBenchmark.newModel(1).bank;
+	plot = PickupBenchmark.newPlot();
+	count = plot.getPlotPointCount();
+	amps = PickupBenchmark.newModel(4).responseCurve(plot.fMin, plot.fMax, count);
+	envelope = model.responseEnvelope(plot.fMin, plot.fMax, count, plot.floorAmp());
+	ys = new int[count];
+	plot.plotDB = new double[count];
+	cache = new CurveCache(CurveCache.DEFAULT_BUDGET);
+
+	synth = new PickupSynth();
+	synth.setUp();
+	synth.pluck();
+
+	convolver = new Convolver(PickupFilter.linearPhase(PickupBenchmark.newModel(2), 44100, 4095));
+	in = new double[convolver.stepSize()];
+	out = new double[convolver.stepSize()];
+	Random r = new Random(1);
+	for (int j = 0; j < in.length; j++) {
+	    in[j] = r.nextGaussian();
+	}
+    }
+
+    @Benchmark
+    public double bankResponseAt() {
+	radRelFreq = (3.0 < radRelFreq) ? 0.001 : radRelFreq + 0.001;
+	return bank.responseAt(0, radRelFreq);
+    }
+
+    @Benchmark
+    public int setPlotPoint() {
+	amp = (3.0 < amp) ? 0.003 : amp * 1.05;
+	plot.setPlotPoint(step++ % count, 0.0, amp);
+	return plot.prevY;
+    }
+
+    @Benchmark
+    public int ampToY() {
+	for (int j = 0; j < count; j++) {
+	    ys[j] = plot.ampToY(amps[j]);
+	}
+	return ys[count / 2];
+    }
+
+    @Benchmark
+    public int ampsToY() {
+	plot.ampsToY(amps, ys, count);
+	return ys[count / 2];
+    }
+
+    @Benchmark
+    public int plotCurve() {
+	plot.directRaster = true;
+	plot.plotCurve(model.curveFreqs, envelope, model.envelopeMin, model.envelopeMax, count);
+	return plot.prevY;
+    }
+
+    @Benchmark
+    public int plotCurveGraphics() {
+	plot.directRaster = false;
+	plot.plotCurve(model.curveFreqs, envelope, model.envelopeMin, model.envelopeMax, count);
+	return plot.prevY;
+    }
+
+    // the render thread's curve for a layout it has seen before
+    @Benchmark
+    public double curveCacheHit() {
+	Pickup p = model.getPickup(0);
+	p.polarity = (0 == step++ % 2) ? +1 : -1;
+	model.publishPickups();
+	return cache.responseEnvelope(model, plot.fMin, plot.fMax, count, plot.floorAmp(),
+				      true).amps[step % count];
+    }
+
+    // and for one it hasn't
+    @Benchmark
+    public double curveCacheMiss() {
+	Pickup p = model.getPickup(0);
+	p.polarity = (0 == step++ % 2) ? +1 : -1;
+	p.position = 1.0 + 1.0e-4 * step;
+	model.publishPickups();
+	return cache.responseEnvelope(model, plot.fMin, plot.fMax, count, plot.floorAmp(),
+				      true).amps[step % count];
+    }
+
+    // one block of samples, with the string plucked again once it's
+    // mostly died away
+    @Benchmark
+    public double synthRenderBlock() {
+	if (0 == step++ % 64) {
+	    synth.pluck();
+	}
+	synth.renderBlock(synth.block, PickupSynth.BLOCK_SIZE);
+	return synth.block[step % PickupSynth.BLOCK_SIZE];
+    }
+
+    // one overlap-add step of the default pickup filter
+    @Benchmark
+    public double convolverProcess() {
+	convolver.process(in, out);
+	return out[out.length / 2];
+    }
+}